@@ -0,0 +1,68 @@
+package org.example.cobraflex;
+
+/*
+ * Min/max decimated time series with a fixed number of buckets:
+ *  - each bucket keeps the minimum and maximum of <samplesPerBucket> consecutive samples
+ *  - when all buckets are used, neighbouring buckets are merged and samplesPerBucket doubles
+ * Memory and drawing cost stay constant no matter how long samples are recorded.
+ */
+class DecimatedSeries {
+
+  private final double[] min;
+  private final double[] max;
+  private int count = 0;
+  private int samplesPerBucket = 1;
+  private int samplesInLastBucket = 0;
+
+  DecimatedSeries(int buckets) {
+    if (buckets < 2 || buckets % 2 != 0) {
+      throw new IllegalArgumentException("buckets must be even and >= 2: " + buckets);
+    }
+    this.min = new double[buckets];
+    this.max = new double[buckets];
+  }
+
+  void add(double value) {
+    if (count == 0 || samplesInLastBucket == samplesPerBucket) {
+      if (count == min.length) {
+        merge();
+      }
+      min[count] = value;
+      max[count] = value;
+      count++;
+      samplesInLastBucket = 1;
+    } else {
+      int last = count - 1;
+      min[last] = Math.min(min[last], value);
+      max[last] = Math.max(max[last], value);
+      samplesInLastBucket++;
+    }
+  }
+
+  // only called with all buckets in use and full, so the merged buckets are full as well
+  private void merge() {
+    int half = count / 2;
+    for (int i = 0; i < half; i++) {
+      min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+      max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+    }
+    count = half;
+    samplesPerBucket *= 2;
+  }
+
+  int capacity() {
+    return min.length;
+  }
+
+  int count() {
+    return count;
+  }
+
+  double min(int bucket) {
+    return min[bucket];
+  }
+
+  double max(int bucket) {
+    return max[bucket];
+  }
+}
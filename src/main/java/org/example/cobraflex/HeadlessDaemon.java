@@ -0,0 +1,512 @@
+package org.example.cobraflex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cobraflex.clients.CobraFlexClient;
+import org.example.cobraflex.clients.DriveDistance;
+import org.example.cobraflex.clients.Feedback;
+import org.example.cobraflex.clients.FollowWaypoints;
+import org.example.cobraflex.clients.FollowWaypoints.Waypoint;
+import org.example.cobraflex.clients.GimbalSweep;
+import org.example.cobraflex.clients.MotionPrimitive;
+import org.example.cobraflex.clients.MovingDirection;
+import org.example.cobraflex.clients.Pose;
+import org.example.cobraflex.clients.TurnBy;
+
+/*
+ * Headless mode without JavaFX, started with --headless [--port=<port>]:
+ *  - without port: commands are read from stdin, output is written to stdout
+ *  - with port: listens on localhost, every connection gets the same protocol
+ * Logging goes to stderr, stdout only carries the output lines.
+ *
+ * Commands, one per line:
+ *  - drive <NORTH|NORTHEAST|EAST|SOUTHEAST|SOUTH|SOUTHWEST|WEST|NORTHWEST|STOP>
+ *  - speed <rpm>
+ *  - wheels <left rpm> <right rpm>
+ *  - gimbal <delta pan> <delta tilt>
+ *  - gimbal_middle
+ *  - light <chassis|gimbal> <0-255>
+ *  - move <cm> [max rpm]
+ *  - turn <degrees> [max rpm]
+ *  - sweep <amplitude> <step> <cycles>
+ *  - waypoints <x>,<y> [<x>,<y> ...]   (cm, frame of the odometry pose)
+ *  - cancel   (stops the motion primitives or the repeated setpoint and the chassis)
+ *  - reset_pose
+ *  - feedback
+ *  - quit
+ *
+ * Output, newline delimited JSON:
+ *  - telemetry: {"t":..,"M1":..,"M2":..,"M3":..,"M4":..,"odl":..,"odr":..,"v":..,"x":..,"y":..,"heading":..}
+ *  - motion primitive finished: {"done":"<command>","ok":true|false}
+ *  - invalid command: {"error":"<message>"}
+ *
+ * Execution:
+ *  - commands are sent by one thread in input order, the reader only waits when COMMAND_QUEUE
+ *    commands are pending; feedback is answered directly
+ *  - drive and wheels take over from a running motion primitive, a moving setpoint is repeated
+ *    every chassis.repeat.ms like the UI does
+ *  - sweep runs next to the chassis motion, it neither takes over nor stops it
+ *  - drive, wheels, light and gimbal commands are merged as long as they are not sent yet: the
+ *    latest setpoint and the latest brightness of each light win, gimbal steps add up and are
+ *    sent in steps of at most GIMBAL_STEP_LIMIT; all other commands are sent one by one
+ *  - move, turn and waypoints without max rpm use the speed level when they are sent, so a
+ *    preceding speed command applies
+ *  - every client has its own output queue, a client that doesn't keep up loses the oldest lines
+ */
+@Slf4j
+public class HeadlessDaemon {
+
+  private static final int COMMAND_QUEUE = 64;
+  // largest gimbal step per axis the Jetson accepts
+  private static final int GIMBAL_STEP_LIMIT = 100;
+
+  private final CobraFlexClient cobraflex = new CobraFlexClient();
+  private final List<Output> outputs = new CopyOnWriteArrayList<>();
+  private final BlockingQueue<Runnable> commands = new ArrayBlockingQueue<>(COMMAND_QUEUE);
+  private final ScheduledExecutorService repeater = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().name("setpoint-repeat").daemon().factory());
+  // last queued task if it still takes merges, guarded by this
+  private DeviceTask tail;
+  // command thread only
+  private ScheduledFuture<?> repeat;
+  private long repeatGeneration = 0;
+
+  public static void run(String[] args) {
+    Integer port = null;
+    for (String arg : args) {
+      if (arg.startsWith("--port=")) {
+        port = Integer.parseInt(arg.substring("--port=".length()));
+      }
+    }
+    new HeadlessDaemon().start(port);
+  }
+
+  private void start(Integer port) {
+    cobraflex.getTelemetry().addListener(this::publish);
+    cobraflex.startup().thenAccept(_ ->
+        cobraflex.getTelemetry().start(cobraflex.getConfig().current().telemetryPeriodMs()));
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+    Thread.ofPlatform().name("commands").daemon().start(this::sendCommands);
+    if (port == null) {
+      Output stdout = new Output(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+      serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), stdout);
+      awaitCommands();
+      stdout.close();
+      System.exit(0);
+    } else {
+      listen(port);
+    }
+  }
+
+  private void listen(int port) {
+    try (ServerSocket server = new ServerSocket(port, 5, InetAddress.getLoopbackAddress())) {
+      log.info("headless mode, listening on {}", server.getLocalSocketAddress());
+      while (true) {
+        Socket socket = server.accept();
+        Thread.ofVirtual().name("client-" + socket.getPort()).start(() -> {
+          try (socket) {
+            Output output = new Output(new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8));
+            serve(new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8)), output);
+            output.close();
+          } catch (IOException e) {
+            log.error("client: {}", e.getMessage());
+          }
+        });
+      }
+    } catch (IOException e) {
+      log.error("headless mode: {}", e.getMessage());
+    }
+  }
+
+  // reads commands until end of input or quit
+  private void serve(BufferedReader input, Output output) {
+    outputs.add(output);
+    try {
+      String line;
+      while ((line = input.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        if (line.equals("quit")) {
+          break;
+        }
+        try {
+          execute(line.split("\\s+"), output);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+          output.write("{\"error\":\"" + escape(line + ": " + e.getMessage()) + "\"}");
+        }
+      }
+    } catch (IOException e) {
+      log.error("input: {}", e.getMessage());
+    } finally {
+      outputs.remove(output);
+    }
+  }
+
+  // arguments are parsed on the reader thread, so errors are reported in input order
+  private void execute(String[] cmd, Output output) {
+    switch (cmd[0]) {
+      case "drive" -> {
+        MovingDirection direction = MovingDirection.valueOf(cmd[1].toUpperCase(Locale.ROOT));
+        Setpoint setpoint = new Setpoint(() -> cobraflex.cmd_speed_control(direction),
+            direction != MovingDirection.STOP);
+        merge(task -> task.setpoint = setpoint);
+      }
+      case "speed" -> {
+        int speedLevel = Integer.parseInt(cmd[1]);
+        submit(() -> cobraflex.setSpeedLevel(speedLevel));
+      }
+      case "wheels" -> {
+        int left = Integer.parseInt(cmd[1]);
+        int right = Integer.parseInt(cmd[2]);
+        Setpoint setpoint = new Setpoint(() -> cobraflex.cmd_wheel_speeds(left, right),
+            left != 0 || right != 0);
+        merge(task -> task.setpoint = setpoint);
+      }
+      case "gimbal" -> {
+        int pan = Integer.parseInt(cmd[1]);
+        int tilt = Integer.parseInt(cmd[2]);
+        merge(task -> {
+          task.pan += pan;
+          task.tilt += tilt;
+        });
+      }
+      case "gimbal_middle" -> submit(cobraflex::gimbal_middle_pos);
+      case "light" -> {
+        int brightness = Integer.parseInt(cmd[2]);
+        switch (cmd[1]) {
+          case "chassis" -> merge(task -> task.chassisLight = brightness);
+          case "gimbal" -> merge(task -> task.gimbalLight = brightness);
+          default -> throw new IllegalArgumentException("unknown light " + cmd[1]);
+        }
+      }
+      case "move" -> {
+        double distance = Double.parseDouble(cmd[1]);
+        IntSupplier maxSpeed = maxSpeed(cmd, 2);
+        motion(cmd[0], output, () -> new DriveDistance(distance, maxSpeed.getAsInt()));
+      }
+      case "turn" -> {
+        double degrees = Double.parseDouble(cmd[1]);
+        IntSupplier maxSpeed = maxSpeed(cmd, 2);
+        motion(cmd[0], output, () -> new TurnBy(degrees, maxSpeed.getAsInt()));
+      }
+      case "sweep" -> {
+        int amplitude = Integer.parseInt(cmd[1]);
+        int step = Integer.parseInt(cmd[2]);
+        int cycles = Integer.parseInt(cmd[3]);
+        motion(cmd[0], output, () -> new GimbalSweep(amplitude, step, cycles));
+      }
+      case "waypoints" -> {
+        List<Waypoint> waypoints = waypoints(cmd);
+        motion(cmd[0], output, () -> new FollowWaypoints(waypoints, cobraflex.getSpeedLevel()));
+      }
+      case "cancel" -> submit(() -> {
+        stopRepeat();
+        cobraflex.getMotion().handOver();
+        cobraflex.getGimbalMotion().cancel();
+        cobraflex.cmd_speed_control(MovingDirection.STOP);
+      });
+      case "reset_pose" -> submit(cobraflex.getOdometry()::reset);
+      case "feedback" -> {
+        Feedback feedback = cobraflex.get_feedback();
+        if (feedback == null) {
+          throw new IllegalArgumentException("no feedback received");
+        }
+        output.write(telemetryLine(feedback, cobraflex.getOdometry().pose()));
+      }
+      default -> throw new IllegalArgumentException("unknown command");
+    }
+  }
+
+  // the primitive is created on the command thread, after the preceding commands are sent
+  private void motion(String name, Output output, Supplier<MotionPrimitive> factory) {
+    submit(() -> {
+      MotionPrimitive primitive = factory.get();
+      if (primitive.drivesChassis()) {
+        stopRepeat();
+        report(name, output, cobraflex.getMotion().run(primitive));
+      } else {
+        report(name, output, cobraflex.getGimbalMotion().run(primitive));
+      }
+    });
+  }
+
+  private synchronized void merge(Consumer<DeviceTask> change) {
+    if (tail != null && tail.merge(change)) {
+      return;
+    }
+    tail = new DeviceTask();
+    tail.merge(change);
+    enqueue(tail);
+  }
+
+  private synchronized void submit(Runnable command) {
+    tail = null;
+    enqueue(command);
+  }
+
+  // lock held, blocks while COMMAND_QUEUE commands are pending
+  private void enqueue(Runnable command) {
+    try {
+      commands.put(command);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("command dropped, interrupted");
+    }
+  }
+
+  // command thread
+  private void sendCommands() {
+    while (true) {
+      try {
+        commands.take().run();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.error("command failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  // waits until the commands read so far are sent
+  private void awaitCommands() {
+    CountDownLatch sent = new CountDownLatch(1);
+    submit(sent::countDown);
+    try {
+      sent.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // command thread, the manual setpoint takes over from a running motion primitive
+  private void apply(Setpoint setpoint) {
+    cobraflex.getMotion().handOver();
+    stopRepeat();
+    setpoint.command().run();
+    if (setpoint.moving()) {
+      long generation = repeatGeneration;
+      long period = cobraflex.getConfig().current().chassisRepeatMs();
+      // skipped if the queue is full, the next repeat follows
+      repeat = repeater.scheduleWithFixedDelay(() -> commands.offer(() -> {
+        if (repeatGeneration == generation) {
+          setpoint.command().run();
+        }
+      }), period, period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // command thread, repeats already queued are skipped as well
+  private void stopRepeat() {
+    repeatGeneration++;
+    if (repeat != null) {
+      repeat.cancel(false);
+      repeat = null;
+    }
+  }
+
+  private static List<Waypoint> waypoints(String[] cmd) {
+    if (cmd.length < 2) {
+      throw new IllegalArgumentException("no waypoints");
+    }
+    List<Waypoint> waypoints = new ArrayList<>();
+    for (int i = 1; i < cmd.length; i++) {
+      String[] xy = cmd[i].split(",");
+      waypoints.add(new Waypoint(Double.parseDouble(xy[0]), Double.parseDouble(xy[1])));
+    }
+    return waypoints;
+  }
+
+  // the given max rpm, otherwise the speed level at the time the primitive is created
+  private IntSupplier maxSpeed(String[] cmd, int index) {
+    if (cmd.length > index) {
+      int rpm = Integer.parseInt(cmd[index]);
+      return () -> rpm;
+    }
+    return cobraflex::getSpeedLevel;
+  }
+
+  private void report(String name, Output output, CompletableFuture<Void> motion) {
+    motion.whenComplete((_, e) ->
+        output.write("{\"done\":\"" + name + "\",\"ok\":" + (e == null) + "}"));
+  }
+
+  // telemetry or motion thread, never waits for a client
+  private void publish(Feedback feedback) {
+    if (outputs.isEmpty()) {
+      return;
+    }
+    String line = telemetryLine(feedback, cobraflex.getOdometry().pose());
+    for (Output output : outputs) {
+      output.write(line);
+    }
+  }
+
+  private static String telemetryLine(Feedback feedback, Pose pose) {
+    return new StringBuilder(160)
+        .append("{\"t\":").append(System.currentTimeMillis())
+        .append(",\"M1\":").append(feedback.m1())
+        .append(",\"M2\":").append(feedback.m2())
+        .append(",\"M3\":").append(feedback.m3())
+        .append(",\"M4\":").append(feedback.m4())
+        .append(",\"odl\":").append(feedback.odl())
+        .append(",\"odr\":").append(feedback.odr())
+        .append(",\"v\":").append(feedback.v())
+        .append(",\"x\":").append(pose.x())
+        .append(",\"y\":").append(pose.y())
+        .append(",\"heading\":").append(pose.heading())
+        .append('}')
+        .toString();
+  }
+
+  private static String escape(String text) {
+    return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\t", "\\t");
+  }
+
+  private void shutdown() {
+    log.info("headless mode stopped");
+    repeater.shutdownNow();
+    commands.clear();
+    cobraflex.getMotion().cancel();
+    cobraflex.cmd_speed_control(MovingDirection.STOP);
+    cobraflex.close();
+  }
+
+  private record Setpoint(Runnable command, boolean moving) {
+  }
+
+  /*
+   * Queued device commands, newer ones are merged in until the command thread takes the task.
+   * The setpoint, the lights and the gimbal are independent devices, the merged commands are
+   * sent in that order.
+   */
+  private final class DeviceTask implements Runnable {
+
+    private Setpoint setpoint;
+    private Integer chassisLight;
+    private Integer gimbalLight;
+    private int pan = 0;
+    private int tilt = 0;
+    private boolean taken = false;
+
+    synchronized boolean merge(Consumer<DeviceTask> change) {
+      if (taken) {
+        return false;
+      }
+      change.accept(this);
+      return true;
+    }
+
+    @Override
+    public void run() {
+      Setpoint latest;
+      Integer chassis;
+      Integer gimbal;
+      int panLeft;
+      int tiltLeft;
+      synchronized (this) {
+        taken = true;
+        latest = setpoint;
+        chassis = chassisLight;
+        gimbal = gimbalLight;
+        panLeft = pan;
+        tiltLeft = tilt;
+      }
+      if (latest != null) {
+        apply(latest);
+      }
+      if (chassis != null || gimbal != null) {
+        cobraflex.ctrl_leds(chassis, gimbal);
+      }
+      while (panLeft != 0 || tiltLeft != 0) {
+        int stepPan = Math.clamp(panLeft, -GIMBAL_STEP_LIMIT, GIMBAL_STEP_LIMIT);
+        int stepTilt = Math.clamp(tiltLeft, -GIMBAL_STEP_LIMIT, GIMBAL_STEP_LIMIT);
+        cobraflex.gimbal_step(stepPan, stepTilt);
+        panLeft -= stepPan;
+        tiltLeft -= stepTilt;
+      }
+    }
+  }
+
+  /*
+   * Output lines may be written from the command, telemetry and motion threads.
+   * write() never blocks, a writer thread per client writes the queued lines.
+   */
+  private static final class Output {
+
+    private static final int CAPACITY = 256;
+    // identity compared end marker
+    private static final String END = new String("END");
+
+    private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writerThread;
+
+    Output(Writer writer) {
+      BufferedWriter buffered = new BufferedWriter(writer);
+      this.writerThread = Thread.ofVirtual().name("output").start(() -> drain(buffered));
+    }
+
+    // drops the oldest line if the client doesn't keep up
+    void write(String line) {
+      while (!lines.offer(line)) {
+        lines.poll();
+      }
+    }
+
+    // writes the queued lines and stops the writer thread
+    void close() {
+      write(END);
+      try {
+        writerThread.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void drain(Writer writer) {
+      try {
+        String line;
+        while ((line = lines.take()) != END) {
+          writer.write(line);
+          writer.write('\n');
+          // one flush for all lines queued meanwhile
+          if (lines.isEmpty()) {
+            writer.flush();
+          }
+        }
+        writer.flush();
+      } catch (IOException e) {
+        log.debug("output: {}", e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
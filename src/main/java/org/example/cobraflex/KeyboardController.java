@@ -33,31 +33,31 @@ public class KeyboardController {
         if (optionKeyPressed) {
           cobraflex.gimbal_step(-100, 0);
         } else {
-          cobraflex.cmd_speed_control(MovingDirection.WEST);
+          drive(MovingDirection.WEST);
         }
       }
       case KeyCode.J -> {
         if (optionKeyPressed) {
           cobraflex.gimbal_step(0, -100);
         } else {
-          cobraflex.cmd_speed_control(MovingDirection.NORTH);
+          drive(MovingDirection.NORTH);
         }
       }
       case KeyCode.K -> {
         if (optionKeyPressed) {
           cobraflex.gimbal_step(0, 100);
         } else {
-          cobraflex.cmd_speed_control(MovingDirection.SOUTH);
+          drive(MovingDirection.SOUTH);
         }
       }
       case KeyCode.L -> {
         if (optionKeyPressed) {
           cobraflex.gimbal_step(100, 0);
         } else {
-          cobraflex.cmd_speed_control(MovingDirection.EAST);
+          drive(MovingDirection.EAST);
         }
       }
-      case KeyCode.SPACE -> cobraflex.cmd_speed_control(MovingDirection.STOP);
+      case KeyCode.SPACE -> drive(MovingDirection.STOP);
       default -> log.info("unexpected key pressed: char={} code={}, ignored",
           e.getText(), e.getCode());
     }
@@ -67,7 +67,13 @@ public class KeyboardController {
     if (e.getCode() == KeyCode.SHIFT) {
       optionKeyPressed = false;
     } else {
-      cobraflex.cmd_speed_control(MovingDirection.STOP);
+      drive(MovingDirection.STOP);
     }
   }
+
+  // manual input takes over the setpoint of a running motion primitive
+  private void drive(MovingDirection direction) {
+    cobraflex.getMotion().handOver();
+    cobraflex.cmd_speed_control(direction);
+  }
 }
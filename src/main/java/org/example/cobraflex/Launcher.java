@@ -1,9 +1,15 @@
 package org.example.cobraflex;
 
+import java.util.Arrays;
 import javafx.application.Application;
 
 public class Launcher {
   static void main(String[] args) {
-    Application.launch(RcApplication.class, args);
+    // headless mode doesn't start the JavaFX toolkit
+    if (Arrays.asList(args).contains("--headless")) {
+      HeadlessDaemon.run(args);
+    } else {
+      Application.launch(RcApplication.class, args);
+    }
   }
 }
@@ -1,12 +1,16 @@
 package org.example.cobraflex;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public class RcApplication extends Application {
 
   @Override
@@ -19,5 +23,8 @@ public class RcApplication extends Application {
     stage.setTitle("CobraFlex RC");
     stage.setScene(scene);
     stage.show();
+    ProcessHandle.current().info().startInstant().ifPresent(jvmStart ->
+        log.info("window shown {} ms after JVM start",
+            Duration.between(jvmStart, Instant.now()).toMillis()));
   }
 }
@@ -0,0 +1,142 @@
+package org.example.cobraflex;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import lombok.Getter;
+import lombok.Setter;
+
+/*
+ * Line chart drawn on a canvas:
+ *  - every series is decimated to a fixed number of min/max buckets
+ *  - samples only mark the chart dirty, it is redrawn at most MAX_FPS times per second
+ * All methods must be called on the FX thread.
+ */
+public class TelemetryChart extends Pane {
+
+  private static final int BUCKETS = 400;
+  private static final int MAX_FPS = 10;
+  private static final long MIN_FRAME_NANOS = 1_000_000_000L / MAX_FPS;
+  private static final double LABEL_WIDTH = 50;
+
+  private final Canvas canvas = new Canvas();
+  private final List<DecimatedSeries> series = new ArrayList<>();
+  private final List<String> names = new ArrayList<>();
+  private final List<Color> colors = new ArrayList<>();
+  @Getter
+  @Setter
+  private String title = "";
+  private boolean dirty = true;
+  private long lastDraw = 0;
+
+  public TelemetryChart() {
+    getStyleClass().add("telemetry-chart");
+    // unmanaged, otherwise the canvas size would feed back into the layout of the pane
+    canvas.setManaged(false);
+    getChildren().add(canvas);
+    canvas.widthProperty().bind(widthProperty());
+    canvas.heightProperty().bind(heightProperty());
+    canvas.widthProperty().addListener(_ -> dirty = true);
+    canvas.heightProperty().addListener(_ -> dirty = true);
+    new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        if (dirty && now - lastDraw >= MIN_FRAME_NANOS) {
+          lastDraw = now;
+          dirty = false;
+          draw();
+        }
+      }
+    }.start();
+  }
+
+  // returns the index to be used with add()
+  public int addSeries(String name, Color color) {
+    series.add(new DecimatedSeries(BUCKETS));
+    names.add(name);
+    colors.add(color);
+    dirty = true;
+    return series.size() - 1;
+  }
+
+  public void add(int seriesIndex, double value) {
+    series.get(seriesIndex).add(value);
+    dirty = true;
+  }
+
+  private void draw() {
+    GraphicsContext gc = canvas.getGraphicsContext2D();
+    double width = canvas.getWidth();
+    double height = canvas.getHeight();
+    gc.setFill(Color.web("#EEEEEE"));
+    gc.fillRect(0, 0, width, height);
+    if (width <= LABEL_WIDTH || height <= 0) {
+      return;
+    }
+
+    double lower = Double.POSITIVE_INFINITY;
+    double upper = Double.NEGATIVE_INFINITY;
+    for (DecimatedSeries s : series) {
+      for (int i = 0; i < s.count(); i++) {
+        lower = Math.min(lower, s.min(i));
+        upper = Math.max(upper, s.max(i));
+      }
+    }
+    if (lower > upper) {
+      lower = 0;
+      upper = 1;
+    } else if (lower == upper) {
+      lower -= 1;
+      upper += 1;
+    }
+
+    double plotWidth = width - LABEL_WIDTH;
+    double top = 20;
+    double plotHeight = height - top - 5;
+    double scale = plotHeight / (upper - lower);
+
+    gc.setFill(Color.BLACK);
+    gc.fillText(title, LABEL_WIDTH, 14);
+    gc.fillText(format(upper), 2, top + 10);
+    gc.fillText(format(lower), 2, top + plotHeight);
+    double legendX = LABEL_WIDTH + 10 + 8 * title.length();
+    for (int i = 0; i < series.size(); i++) {
+      gc.setFill(colors.get(i));
+      gc.fillText(names.get(i), legendX, 14);
+      legendX += 10 + 8 * names.get(i).length();
+    }
+
+    gc.setLineWidth(1);
+    for (int n = 0; n < series.size(); n++) {
+      DecimatedSeries s = series.get(n);
+      if (s.count() == 0) {
+        continue;
+      }
+      double step = plotWidth / s.capacity();
+      gc.setStroke(colors.get(n));
+      gc.beginPath();
+      for (int i = 0; i < s.count(); i++) {
+        double x = LABEL_WIDTH + i * step;
+        double yMax = top + (upper - s.max(i)) * scale;
+        double yMin = top + (upper - s.min(i)) * scale;
+        if (i == 0) {
+          gc.moveTo(x, yMax);
+        } else {
+          gc.lineTo(x, yMax);
+        }
+        if (yMin != yMax) {
+          gc.lineTo(x, yMin);
+        }
+      }
+      gc.stroke();
+    }
+  }
+
+  private static String format(double value) {
+    return value == Math.rint(value) ? Long.toString((long) value) : String.format("%.1f", value);
+  }
+}
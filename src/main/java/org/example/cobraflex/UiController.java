@@ -1,19 +1,25 @@
 package org.example.cobraflex;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextArea;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.example.cobraflex.clients.CobraFlexClient;
+import org.example.cobraflex.clients.Feedback;
 import org.example.cobraflex.clients.MovingDirection;
+import org.example.cobraflex.clients.Pose;
+import org.example.cobraflex.clients.RcConfig;
+import org.example.cobraflex.clients.Transport;
 
 @Slf4j
 public class UiController {
@@ -27,41 +33,144 @@ public class UiController {
   @FXML
   public RadioButton gimbal_cam;
   @FXML
+  public RadioButton esp32_transport;
+  @FXML
   public TextArea console;
+  @FXML
+  public Label m1;
+  @FXML
+  public Label m2;
+  @FXML
+  public Label m3;
+  @FXML
+  public Label m4;
+  @FXML
+  public Label odl;
+  @FXML
+  public Label odr;
+  @FXML
+  public Label voltage;
+  @FXML
+  public Label pose_x;
+  @FXML
+  public Label pose_y;
+  @FXML
+  public Label pose_heading;
+  @FXML
+  public TelemetryChart wheel_chart;
+  @FXML
+  public TelemetryChart odometry_chart;
+  @FXML
+  public TelemetryChart voltage_chart;
 
   @Setter
   private Stage stage;
 
+  private static final int CONSOLE_LINES = 500;
+
   private CobraFlexClient cobraflex;
+  private UiLogSink consoleSink;
   private KeyboardController keyboardController;
   private Timer gimbalTimer;
   private Timer chassisTimer;
   private MovingDirection currentDirection = MovingDirection.STOP;
+  // slider updates from a configuration change must not become UI overrides
+  private boolean applyingConfig = false;
 
 
   @FXML
   public void initialize() {
     this.cobraflex = new CobraFlexClient();
+    consoleSink = new UiLogSink(console, CONSOLE_LINES);
     keyboardController = new KeyboardController(cobraflex);
-    ctrl_chassis_led(0);
-    ctrl_gimbal_led(0);
+    wheel_chart.addSeries("M1", Color.RED);
+    wheel_chart.addSeries("M2", Color.GREEN);
+    wheel_chart.addSeries("M3", Color.BLUE);
+    wheel_chart.addSeries("M4", Color.ORANGE);
+    odometry_chart.addSeries("odl", Color.RED);
+    odometry_chart.addSeries("odr", Color.BLUE);
+    voltage_chart.addSeries("v", Color.GREEN);
+    cobraflex.getTelemetry().addListener(feedback ->
+        Platform.runLater(() -> showFeedback(feedback)));
+    cobraflex.addLinkListener(linkUp ->
+        consoleSink.append(linkUp ? "CobraFlex link up again" : "CobraFlex link lost"));
+    cobraflex.startup().thenAccept(linkUp -> {
+      consoleSink.append(linkUp ? "CobraFlex connected" : "CobraFlex not reachable");
+      // requests fail fast while the link is down, polling resumes by itself
+      cobraflex.getTelemetry().start(cobraflex.getConfig().current().telemetryPeriodMs());
+    });
     chassis_light.valueProperty().addListener(
         (_, _, newValue) ->
             ctrl_chassis_led(newValue.intValue()));
     gimbal_light.valueProperty().addListener(
         (_, _, newValue) ->
             ctrl_gimbal_led(newValue.intValue()));
-    chassis_speed.valueProperty().addListener(
-        (_, _, newValue) ->
-            cobraflex.setSpeedLevel(newValue.intValue()));
+    // the speed slider is the UI layer of the configuration
+    chassis_speed.setValue(cobraflex.getConfig().current().defaultSpeed());
+    // written once the slider is released, not for every value while it is dragged
+    chassis_speed.valueProperty().addListener((_, _, _) -> {
+      if (!applyingConfig && !chassis_speed.isValueChanging()) {
+        overrideDefaultSpeed();
+      }
+    });
+    chassis_speed.valueChangingProperty().addListener((_, _, changing) -> {
+      if (!changing) {
+        overrideDefaultSpeed();
+      }
+    });
+    cobraflex.getConfig().addListener((previous, next) -> {
+      if (next.defaultSpeed() != previous.defaultSpeed()) {
+        Platform.runLater(() -> {
+          applyingConfig = true;
+          chassis_speed.setValue(next.defaultSpeed());
+          applyingConfig = false;
+        });
+      }
+      if (next.transport() != previous.transport()) {
+        Platform.runLater(() -> esp32_transport.setSelected(next.transport() == Transport.ESP32));
+      }
+    });
     Platform.runLater(() -> stage.setOnCloseRequest(_ -> exitApplication()));
     log.info("CobraFlex RC initialized");
   }
 
+  // requested off the FX thread, the telemetry listeners show the sample and update the odometry
   @FXML
   public void getFeedback() {
-    JsonNode result = cobraflex.get_feedback();
-    console.appendText(result + "\n");
+    CompletableFuture.supplyAsync(cobraflex.getTelemetry()::poll).thenAccept(feedback -> {
+      if (feedback == null) {
+        Platform.runLater(() -> consoleSink.append("no feedback received"));
+      }
+    });
+  }
+
+  private void showFeedback(Feedback feedback) {
+    showValue(m1, feedback.m1());
+    showValue(m2, feedback.m2());
+    showValue(m3, feedback.m3());
+    showValue(m4, feedback.m4());
+    showValue(odl, feedback.odl());
+    showValue(odr, feedback.odr());
+    showValue(voltage, feedback.v());
+    Pose pose = cobraflex.getOdometry().pose();
+    showValue(pose_x, pose.x());
+    showValue(pose_y, pose.y());
+    showValue(pose_heading, pose.headingDegrees());
+    wheel_chart.add(0, feedback.m1());
+    wheel_chart.add(1, feedback.m2());
+    wheel_chart.add(2, feedback.m3());
+    wheel_chart.add(3, feedback.m4());
+    odometry_chart.add(0, feedback.odl());
+    odometry_chart.add(1, feedback.odr());
+    voltage_chart.add(0, feedback.v());
+  }
+
+  private void showValue(Label label, double value) {
+    String text = value == Math.rint(value)
+        ? Long.toString((long) value) : String.format("%.1f", value);
+    if (!text.equals(label.getText())) {
+      label.setText(text);
+    }
   }
 
   // gimbal upper left button
@@ -150,6 +259,7 @@ public class UiController {
   @FXML
   public void cmm_pressed() {
     currentDirection = MovingDirection.STOP;
+    cobraflex.getMotion().handOver();
     cobraflex.cmd_speed_control(MovingDirection.STOP);
   }
 
@@ -196,6 +306,12 @@ public class UiController {
     // focus on button is sufficient
   }
 
+  @FXML
+  public void transport_switched() {
+    cobraflex.getConfig().set_override("transport",
+        esp32_transport.isSelected() ? Transport.ESP32.name() : Transport.JETSON.name());
+  }
+
   @FXML
   public void gimbal_camera_switched() {
     cobraflex.switch_gimbal_camera(gimbal_cam.isSelected());
@@ -211,7 +327,7 @@ public class UiController {
       public void run() {
         cobraflex.gimbal_step(delta_pan, delta_tilt);
       }
-    }, 0, 20);
+    }, 0, cobraflex.getConfig().current().gimbalRepeatMs());
   }
 
   @FXML
@@ -222,20 +338,23 @@ public class UiController {
   }
 
   private void repeat_chassis_cmd(MovingDirection direction) {
+    // the manual command takes over the setpoint of a running motion primitive
+    cobraflex.getMotion().handOver();
     if (chassisTimer != null) {
       chassisTimer.cancel();
     }
+    RcConfig config = cobraflex.getConfig().current();
     int last_speedLevel = cobraflex.getSpeedLevel();
     int i = 200;
     while (i < last_speedLevel) {
       cobraflex.setSpeedLevel(i);
       cobraflex.cmd_speed_control(direction);
       try {
-        Thread.sleep(20);
+        Thread.sleep(config.rampIntervalMs());
       } catch (InterruptedException e) {
         log.error(e.getMessage());
       }
-      i += 100;
+      i += config.rampStep();
     }
     cobraflex.setSpeedLevel(last_speedLevel);
     chassisTimer = new Timer();
@@ -244,7 +363,7 @@ public class UiController {
       public void run() {
         cobraflex.cmd_speed_control(direction);
       }
-    }, 0, 500);
+    }, 0, config.chassisRepeatMs());
   }
 
   @FXML
@@ -253,14 +372,15 @@ public class UiController {
       chassisTimer.cancel();
     }
     if (currentDirection != MovingDirection.STOP) {
+      RcConfig config = cobraflex.getConfig().current();
       int last_speedLevel = cobraflex.getSpeedLevel();
       int i = last_speedLevel;
       while (i > 200) {
-        i -= 100;
+        i -= config.rampStep();
         cobraflex.setSpeedLevel(i);
         cobraflex.cmd_speed_control(currentDirection);
         try {
-          Thread.sleep(20);
+          Thread.sleep(config.rampIntervalMs());
         } catch (InterruptedException e) {
           log.error(e.getMessage());
         }
@@ -269,7 +389,11 @@ public class UiController {
       currentDirection = MovingDirection.STOP;
       cobraflex.cmd_speed_control(MovingDirection.STOP);
     }
-    getFeedback();
+  }
+
+  private void overrideDefaultSpeed() {
+    cobraflex.getConfig().set_override("chassis.speed.default",
+        Integer.toString(Math.max((int) chassis_speed.getValue(), 1)));
   }
 
   private void ctrl_chassis_led(int brightness) {
@@ -285,5 +409,6 @@ public class UiController {
     gimbal_released();
     ctrl_chassis_led(0);
     ctrl_gimbal_led(0);
+    cobraflex.close();
   }
 }
@@ -0,0 +1,60 @@
+package org.example.cobraflex;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+import javafx.scene.control.TextArea;
+
+/*
+ * Console output for the UI:
+ *  - append() may be called from any thread, lines are queued
+ *  - at most one flush is pending on the FX thread, it drains all queued lines at once
+ *  - the console keeps only the last <capacity> lines (ring buffer)
+ */
+public class UiLogSink {
+
+  private final TextArea console;
+  private final String[] ring;
+  private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+  private final StringBuilder text = new StringBuilder();
+  private int head = 0;
+  private int size = 0;
+
+  public UiLogSink(TextArea console, int capacity) {
+    this.console = console;
+    this.ring = new String[capacity];
+  }
+
+  public void append(String line) {
+    pending.add(line);
+    if (flushScheduled.compareAndSet(false, true)) {
+      Platform.runLater(this::flush);
+    }
+  }
+
+  // FX thread only
+  private void flush() {
+    flushScheduled.set(false);
+    String line;
+    boolean changed = false;
+    while ((line = pending.poll()) != null) {
+      ring[(head + size) % ring.length] = line;
+      if (size < ring.length) {
+        size++;
+      } else {
+        head = (head + 1) % ring.length;
+      }
+      changed = true;
+    }
+    if (!changed) {
+      return;
+    }
+    text.setLength(0);
+    for (int i = 0; i < size; i++) {
+      text.append(ring[(head + i) % ring.length]).append('\n');
+    }
+    console.setText(text.toString());
+    console.positionCaret(text.length());
+  }
+}
@@ -0,0 +1,135 @@
+package org.example.cobraflex.clients;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Circuit breaker for the link to one host:
+ *  - closed: requests are sent, <failureThreshold> consecutive failures open the breaker
+ *  - open: requests fail fast without network access, the probe is run every PROBE_INTERVAL_MS
+ *  - a successful probe closes the breaker again
+ * Link listeners are called with false when the breaker opens and true when it closes.
+ * close() stops the probing for good, called when the client is closed.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  private static final long PROBE_INTERVAL_MS = 1000;
+  private static final ScheduledExecutorService PROBES =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "link-probe");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final String name;
+  private final int failureThreshold;
+  private final BooleanSupplier probe;
+  private final List<Consumer<Boolean>> linkListeners = new CopyOnWriteArrayList<>();
+  private volatile boolean open = false;
+  private int failures = 0;
+  private boolean closed = false;
+  private ScheduledFuture<?> probing;
+
+  public CircuitBreaker(String name, int failureThreshold, BooleanSupplier probe) {
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.probe = probe;
+  }
+
+  public void addLinkListener(Consumer<Boolean> listener) {
+    linkListeners.add(listener);
+  }
+
+  public boolean allowRequest() {
+    return !open;
+  }
+
+  public synchronized void onSuccess() {
+    failures = 0;
+  }
+
+  public void onFailure() {
+    boolean opened;
+    synchronized (this) {
+      failures++;
+      opened = failures >= failureThreshold && openCircuit();
+    }
+    if (opened) {
+      notifyListeners(false);
+    }
+  }
+
+  // opens the breaker immediately, e.g. when the first connect fails
+  public void trip() {
+    boolean opened;
+    synchronized (this) {
+      opened = openCircuit();
+    }
+    if (opened) {
+      notifyListeners(false);
+    }
+  }
+
+  // returns false if the breaker was already open
+  private boolean openCircuit() {
+    if (open) {
+      return false;
+    }
+    open = true;
+    log.warn("{}: link down, requests fail fast until the host answers again", name);
+    if (closed) {
+      return true;
+    }
+    probing = PROBES.scheduleWithFixedDelay(this::runProbe,
+        PROBE_INTERVAL_MS, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  public synchronized void close() {
+    closed = true;
+    if (probing != null) {
+      probing.cancel(false);
+      probing = null;
+    }
+  }
+
+  private void runProbe() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+    }
+    if (!probe.getAsBoolean()) {
+      return;
+    }
+    synchronized (this) {
+      if (!open || closed) {
+        return;
+      }
+      open = false;
+      failures = 0;
+      probing.cancel(false);
+      probing = null;
+    }
+    log.info("{}: link up again", name);
+    notifyListeners(true);
+  }
+
+  private void notifyListeners(boolean linkUp) {
+    for (Consumer<Boolean> listener : linkListeners) {
+      try {
+        listener.accept(linkUp);
+      } catch (RuntimeException e) {
+        log.error("{}: link listener failed: {}", name, e.getMessage());
+      }
+    }
+  }
+}
@@ -1,8 +1,12 @@
 package org.example.cobraflex.clients;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /*
  * References:
@@ -10,6 +14,7 @@ import lombok.Setter;
  *  - https://www.waveshare.com/wiki/Cobra_Flex
  *  - https://www.waveshare.com/wiki/2-Axis_Pan-Tilt_Camera_Module
  */
+@Slf4j
 public class CobraFlexClient {
 
   private static final String FEEDBACK_PATH = "/cobraflex/feedback";
@@ -17,10 +22,22 @@ public class CobraFlexClient {
   private static final String GIMBAL_STEP_PATH = "/gimbal/step";
   private static final String GIMBAL_MIDDLE_POS_PATH = "/gimbal/middle_position";
   private static final String GIMBAL_CAMERA_PATH = "/gimbal/camera";
+  // the pose is recorded at most once per POSE_LOG_MS, and only when it changed
+  private static final long POSE_LOG_MS = 1000;
 
   @Getter
-  private final int DEFAULT_SPEED = 600;
+  private final ConfigService config;
   private final JetsonOrinNanoClient jetson;
+  private final ESP32S3Client esp32;
+  private final List<Consumer<Boolean>> linkListeners = new CopyOnWriteArrayList<>();
+  @Getter
+  private final TelemetryStream telemetry;
+  @Getter
+  private final OdometryEstimator odometry;
+  @Getter
+  private final MotionEngine motion;
+  @Getter
+  private final MotionEngine gimbalMotion;
   @Getter
   private int speedLevel;
   @Setter
@@ -32,15 +49,127 @@ public class CobraFlexClient {
   private int actualChassisLight = 0;
   private int actualGimbalLight = 0;
   private String gimbal_cam_pid = null;
+  private long lastPoseLog = 0;
+  private Pose lastLoggedPose = null;
 
 
   public CobraFlexClient() {
-    this.jetson = new JetsonOrinNanoClient();
-    this.speedLevel = getDEFAULT_SPEED();
+    this.config = new ConfigService();
+    this.jetson = new JetsonOrinNanoClient(FEEDBACK_PATH);
+    this.esp32 = new ESP32S3Client(config);
+    this.telemetry = new TelemetryStream(this);
+    this.odometry = new OdometryEstimator();
+    this.motion = new MotionEngine(this, "motion", true);
+    this.gimbalMotion = new MotionEngine(this, "gimbal-motion", false);
+    jetson.getCircuitBreaker().addLinkListener(linkUp -> linkChanged(Transport.JETSON, linkUp));
+    esp32.getCircuitBreaker().addLinkListener(linkUp -> linkChanged(Transport.ESP32, linkUp));
+    // registered first, so the pose is up to date for all other telemetry listeners
+    telemetry.addListener(feedback -> {
+      odometry.update(feedback);
+      logPose(feedback);
+    });
+    config.addListener(this::configChanged);
+    this.speedLevel = config.current().defaultSpeed();
     this.actPan = 0;
     this.actTilt = 0;
   }
 
+  /*
+   * Resolves the configuration and connects to the Jetson in the background, then checks the
+   * chassis link of the configured transport and applies the initial device state (lights off)
+   * once it is up. Completes with false if the chassis is not reachable, the device state is
+   * then applied when the link comes up.
+   */
+  public CompletableFuture<Boolean> startup() {
+    long start = System.nanoTime();
+    CompletableFuture<RcConfig> configured = CompletableFuture.supplyAsync(config::start);
+    return jetson.connect(configured).thenApply(jetsonUp -> {
+      boolean linkUp = config.current().transport() == Transport.ESP32
+          ? esp32.connect() : jetsonUp;
+      if (linkUp) {
+        ctrl_chassis_led(0);
+        ctrl_gimbal_led(0);
+        log.info("initial device state applied after {} ms",
+            (System.nanoTime() - start) / 1_000_000);
+      } else {
+        log.warn("robot not reachable, initial device state applied when the link is up");
+      }
+      return linkUp;
+    });
+  }
+
+  /*
+   * Link to the chassis over the configured transport.
+   * linkUp: true when the link came back, false when it was lost
+   */
+  public void addLinkListener(Consumer<Boolean> listener) {
+    linkListeners.add(listener);
+  }
+
+  // circuit breaker thread
+  /*
+   * Records the pose with the feedback it was integrated from at info, so it ends up in the
+   * recorded logs without a line for every sample.
+   */
+  private synchronized void logPose(Feedback feedback) {
+    long now = System.currentTimeMillis();
+    if (now - lastPoseLog < POSE_LOG_MS) {
+      return;
+    }
+    Pose pose = odometry.pose();
+    if (!pose.equals(lastLoggedPose)) {
+      lastPoseLog = now;
+      lastLoggedPose = pose;
+      log.info("pose {} {}", pose, feedback);
+    }
+  }
+
+  private void linkChanged(Transport transport, boolean linkUp) {
+    if (config.current().transport() != transport) {
+      return;
+    }
+    if (linkUp) {
+      resync();
+    } else {
+      motion.cancel();
+      gimbalMotion.cancel();
+    }
+    for (Consumer<Boolean> listener : linkListeners) {
+      listener.accept(linkUp);
+    }
+  }
+
+  // the chassis may have lost its state while the link was down
+  private void resync() {
+    log.info("link up, resync device state");
+    cmd_speed_control(MovingDirection.STOP);
+    send_led_cmd();
+  }
+
+  // applied live, open connections and running timers are kept
+  private void configChanged(RcConfig previous, RcConfig next) {
+    jetson.apply(next);
+    if (next.defaultSpeed() != previous.defaultSpeed()) {
+      setSpeedLevel(next.defaultSpeed());
+    }
+    // while a motion primitive runs, the new period applies when the telemetry resumes
+    if (next.telemetryPeriodMs() != previous.telemetryPeriodMs() && telemetry.isRunning()) {
+      telemetry.start(next.telemetryPeriodMs());
+    }
+    if (next.transport() != previous.transport()) {
+      log.info("chassis transport: {}", next.transport());
+    }
+  }
+
+  public void close() {
+    config.stop();
+    motion.shutdown();
+    gimbalMotion.shutdown();
+    telemetry.stop();
+    jetson.close();
+    esp32.close();
+  }
+
   public void setSpeedLevel(int speedLevel) {
     if (speedLevel < 0) {
       speedLevel = 0;
@@ -58,9 +187,13 @@ public class CobraFlexClient {
    *  - odl: mileage of the left wheel in cm after last start of the chassis
    *  - odr: mileage of the right wheel in cm after the last start of the chassis
    *  - v: voltage in mV
+   * Returns null if no feedback was received.
    */
-  public JsonNode get_feedback() {
-    return jetson.get(FEEDBACK_PATH);
+  public Feedback get_feedback() {
+    if (config.current().transport() == Transport.ESP32) {
+      return esp32.get_feedback();
+    }
+    return jetson.get_feedback(FEEDBACK_PATH);
   }
 
   /*
@@ -126,12 +259,23 @@ public class CobraFlexClient {
       case STOP -> {
       }
     }
+    send_speed_cmd(frontLeft, frontRight, rearRight, rearLeft);
+  }
+
+  /*
+   * CMD_SPEED_CTRL for the left and the right side, used by the motion primitives
+   */
+  public void cmd_wheel_speeds(int left, int right) {
+    send_speed_cmd(left, right, right, left);
+  }
+
+  private void send_speed_cmd(int frontLeft, int frontRight, int rearRight, int rearLeft) {
     String cmd = "{\"T\":11,\"M1\":" + frontLeft + ",\"M2\":" + frontRight + ",\"M3\":" + rearRight + ",\"M4\":" + rearLeft + "}";
-    jetson.post(CMD_PATH, cmd);
+    send_chassis_cmd(cmd);
   }
 
   public void gimbal_middle_pos() {
-    jetson.post(GIMBAL_MIDDLE_POS_PATH, "{}");
+    jetson.send(GIMBAL_MIDDLE_POS_PATH, "{}");
   }
 
   /*
@@ -140,7 +284,7 @@ public class CobraFlexClient {
    */
   public void gimbal_step(int delta_pan, int delta_tilt) {
     String cmd = "{\"pan\":" + delta_pan + ",\"tilt\":" + delta_tilt + "}";
-    jetson.post(GIMBAL_STEP_PATH, cmd);
+    jetson.send(GIMBAL_STEP_PATH, cmd);
   }
 
   /*
@@ -156,8 +300,7 @@ public class CobraFlexClient {
     if (brightness != actualChassisLight) {
       actualChassisLight = brightness;
     }
-    String cmd = "{\"T\":132, \"IO1\":" + actualChassisLight + ",\"IO2\": " + actualGimbalLight + "}";
-    jetson.post(CMD_PATH, cmd);
+    send_led_cmd();
   }
 
   /*
@@ -173,15 +316,38 @@ public class CobraFlexClient {
     if (brightness != actualGimbalLight) {
       actualGimbalLight = brightness;
     }
+    send_led_cmd();
+  }
+
+  // CMD_LED_CTRL for both lights at once, null keeps the brightness of a light
+  public void ctrl_leds(Integer chassisBrightness, Integer gimbalBrightness) {
+    if (chassisBrightness != null) {
+      actualChassisLight = Math.clamp(chassisBrightness, 0, 255);
+    }
+    if (gimbalBrightness != null) {
+      actualGimbalLight = Math.clamp(gimbalBrightness, 0, 255);
+    }
+    send_led_cmd();
+  }
+
+  private void send_led_cmd() {
     String cmd = "{\"T\":132, \"IO1\":" + actualChassisLight + ",\"IO2\": " + actualGimbalLight + "}";
-    jetson.post(CMD_PATH, cmd);
+    send_chassis_cmd(cmd);
+  }
+
+  private void send_chassis_cmd(String cmd) {
+    if (config.current().transport() == Transport.ESP32) {
+      esp32.send(cmd);
+    } else {
+      jetson.send(CMD_PATH, cmd);
+    }
   }
 
   public void switch_gimbal_camera(boolean camera_on) {
     if (camera_on) {
       gimbal_cam_pid = jetson.post(GIMBAL_CAMERA_PATH + "/on", "{}").toString();
     } else {
-      jetson.post(GIMBAL_CAMERA_PATH + "/off", gimbal_cam_pid);
+      jetson.send(GIMBAL_CAMERA_PATH + "/off", gimbal_cam_pid);
     }
   }
 }
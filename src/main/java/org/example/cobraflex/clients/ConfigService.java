@@ -0,0 +1,191 @@
+package org.example.cobraflex.clients;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Runtime configuration, layered from lowest to highest priority:
+ *  - application.properties on the classpath (defaults)
+ *  - external file, -Dcobraflex.config=<path>, default ./cobraflex.properties
+ *  - system properties with the same keys, e.g. -DJetson.host=192.168.1.2
+ *  - overrides set by the UI
+ * The external file is watched, changes are applied without restart. An invalid configuration
+ * is logged and ignored, the current one stays active.
+ * Listeners are called with the previous and the new configuration.
+ */
+@Slf4j
+public class ConfigService {
+
+  private static final String DEFAULTS = "application.properties";
+  // editors write files in several steps
+  private static final long DEBOUNCE_MS = 100;
+
+  private final Path file;
+  private final Properties defaults;
+  private final Properties overrides = new Properties();
+  private final List<BiConsumer<RcConfig, RcConfig>> listeners = new CopyOnWriteArrayList<>();
+  private volatile Properties fileProperties = new Properties();
+  private volatile RcConfig current;
+  private WatchService watchService;
+
+  public ConfigService() {
+    this(Path.of(System.getProperty("cobraflex.config", "cobraflex.properties")));
+  }
+
+  public ConfigService(Path file) {
+    this.file = file.toAbsolutePath();
+    this.defaults = loadDefaults();
+    this.current = RcConfig.of(defaults);
+  }
+
+  public RcConfig current() {
+    return current;
+  }
+
+  public void addListener(BiConsumer<RcConfig, RcConfig> listener) {
+    listeners.add(listener);
+  }
+
+  // reads all layers and starts watching the external file
+  public RcConfig start() {
+    fileProperties = loadFile();
+    apply();
+    watch();
+    return current;
+  }
+
+  public void set_override(String key, String value) {
+    synchronized (overrides) {
+      overrides.setProperty(key, value);
+    }
+    apply();
+  }
+
+  public synchronized void stop() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.error("config watcher: {}", e.getMessage());
+      }
+      watchService = null;
+    }
+  }
+
+  private void apply() {
+    RcConfig previous;
+    RcConfig next;
+    synchronized (this) {
+      Properties merged = new Properties();
+      merged.putAll(defaults);
+      merged.putAll(fileProperties);
+      for (String key : defaults.stringPropertyNames()) {
+        String value = System.getProperty(key);
+        if (value != null) {
+          merged.setProperty(key, value);
+        }
+      }
+      synchronized (overrides) {
+        merged.putAll(overrides);
+      }
+      try {
+        next = RcConfig.of(merged);
+      } catch (IllegalArgumentException e) {
+        log.error("invalid configuration ignored: {}", e.getMessage());
+        return;
+      }
+      previous = current;
+      if (next.equals(previous)) {
+        return;
+      }
+      current = next;
+    }
+    log.info("configuration: {}", next);
+    for (BiConsumer<RcConfig, RcConfig> listener : listeners) {
+      try {
+        listener.accept(previous, next);
+      } catch (RuntimeException e) {
+        log.error("config listener failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  private synchronized void watch() {
+    Path dir = file.getParent();
+    if (watchService != null || dir == null || !Files.isDirectory(dir)) {
+      return;
+    }
+    try {
+      watchService = dir.getFileSystem().newWatchService();
+      dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException e) {
+      log.error("config watcher: {}", e.getMessage());
+      return;
+    }
+    WatchService service = watchService;
+    Thread watcher = new Thread(() -> watchLoop(service), "config-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    log.info("watching {}", file);
+  }
+
+  private void watchLoop(WatchService service) {
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (file.getFileName().equals(event.context())) {
+            changed = true;
+          }
+        }
+        key.reset();
+        if (changed) {
+          Thread.sleep(DEBOUNCE_MS);
+          fileProperties = loadFile();
+          apply();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      log.debug("config watcher stopped");
+    }
+  }
+
+  private Properties loadFile() {
+    Properties properties = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (Reader reader = Files.newBufferedReader(file)) {
+        properties.load(reader);
+      } catch (IOException e) {
+        log.error("{}: {}", file, e.getMessage());
+      }
+    }
+    return properties;
+  }
+
+  private Properties loadDefaults() {
+    Properties properties = new Properties();
+    try (InputStream stream = Thread.currentThread().getContextClassLoader()
+        .getResourceAsStream(DEFAULTS)) {
+      properties.load(stream);
+    } catch (IOException e) {
+      log.error(e.getMessage());
+      throw new RuntimeException(e);
+    }
+    return properties;
+  }
+}
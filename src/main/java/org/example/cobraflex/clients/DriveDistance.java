@@ -0,0 +1,51 @@
+package org.example.cobraflex.clients;
+
+/*
+ * Drives straight for a distance in cm, negative distances drive backwards.
+ *  - the speed is reduced proportionally to the remaining distance
+ *  - heading drift is corrected with the difference between the left and right wheel speeds
+ */
+public class DriveDistance implements MotionPrimitive {
+
+  private static final double TOLERANCE_CM = 1.0;
+  private static final double SPEED_PER_CM = 20.0;
+  private static final double CORRECTION_PER_RAD = 400.0;
+  private static final int MIN_SPEED = 150;
+
+  private final double distance;
+  private final int maxSpeed;
+  private Pose origin;
+
+  public DriveDistance(double distance, int maxSpeed) {
+    this.distance = distance;
+    this.maxSpeed = Math.max(maxSpeed, MIN_SPEED);
+  }
+
+  @Override
+  public void start(MotionEngine engine) {
+    origin = engine.pose();
+  }
+
+  @Override
+  public boolean step(MotionEngine engine) {
+    Pose pose = engine.pose();
+    // progress along the initial heading
+    double travelled = (pose.x() - origin.x()) * Math.cos(origin.heading())
+        + (pose.y() - origin.y()) * Math.sin(origin.heading());
+    double direction = Math.signum(distance);
+    double remaining = Math.abs(distance) - travelled * direction;
+    if (remaining <= TOLERANCE_CM) {
+      return true;
+    }
+    double speed = direction * Math.clamp(remaining * SPEED_PER_CM, MIN_SPEED, maxSpeed);
+    double correction = CORRECTION_PER_RAD
+        * OdometryEstimator.normalize(origin.heading() - pose.heading());
+    engine.set_wheel_speeds((int) (speed - correction), (int) (speed + correction));
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "DriveDistance[" + distance + " cm]";
+  }
+}
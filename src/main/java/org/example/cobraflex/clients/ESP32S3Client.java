@@ -1,21 +1,23 @@
 package org.example.cobraflex.clients;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Properties;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.apache.hc.core5.http.message.StatusLine;
 import org.apache.hc.core5.util.TimeValue;
@@ -25,81 +27,169 @@ import org.apache.hc.core5.util.Timeout;
  * References:
  *  - https://www.waveshare.com/wiki/ESP32-S3-DEV-KIT-N8R8
  *  - https://www.waveshare.com/wiki/Cobra_Flex
+ *
+ * Host and timeout are taken from the current configuration on every request.
  */
 
 @Slf4j
 public class ESP32S3Client {
 
-  private final String host;
+  private static final int FAILURE_THRESHOLD = 2;
+  private static final int FEEDBACK_RETRIES = 2;
+  private static final long RETRY_DELAY_MS = 50;
+  // CMD_BASE_FEEDBACK, read only, used as health probe
+  private static final String FEEDBACK_CMD = "{\"T\":130}";
 
-  public ESP32S3Client() {
-    Properties properties = loadProperties();
-    this.host = properties.get("ESP32.host").toString();
-    log.info("ESP32.host: {}", this.host);
+  private final ConfigService config;
+  @Getter
+  private final CircuitBreaker circuitBreaker;
+  private CloseableHttpClient client;
+  private PoolingHttpClientConnectionManager connManager;
+  private int appliedTimeoutMs;
+
+  public ESP32S3Client(ConfigService config) {
+    this.config = config;
+    this.circuitBreaker = new CircuitBreaker("ESP32", FAILURE_THRESHOLD, this::probe);
+  }
+
+  /*
+   * First request on the link, opens the circuit breaker if the ESP32 doesn't answer.
+   * Returns true if the link is up.
+   */
+  public boolean connect() {
+    if (probe()) {
+      return true;
+    }
+    log.warn("ESP32 {} not reachable", config.current().esp32Host());
+    circuitBreaker.trip();
+    return false;
   }
 
-  public JsonNode get(String cmd) throws RuntimeException {
-    JsonFactory jsonFactory = new JsonFactory();
-    ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
-    JsonNode responseData = JsonNodeFactory.instance.objectNode();
-    PoolingHttpClientConnectionManager connManager;
+  // fire and forget command, the response body is only drained
+  public void send(String cmd) {
+    if (!circuitBreaker.allowRequest()) {
+      log.debug("Request: {} dropped, link down", cmd);
+      return;
+    }
     try {
-      connManager = PoolingHttpClientConnectionManagerBuilder.create()
-          .build();
-      {
-        connManager.setDefaultConnectionConfig(ConnectionConfig.custom()
-            .setConnectTimeout(Timeout.ofSeconds(2))
-            .setSocketTimeout(Timeout.ofSeconds(2))
-            .setTimeToLive(TimeValue.ofHours(1))
-            .build());
-        try (CloseableHttpClient client = HttpClients.custom()
-            .setConnectionManager(connManager).build()) {
-          ClassicHttpRequest httpGet = ClassicRequestBuilder.get()
-              .setScheme("http")
-              .setHttpHost(new HttpHost(host))
-              .setPath("/js")
-              .addParameter("json", cmd)
-              .build();
-          log.info("Request: {}", cmd);
-          responseData = client.execute(httpGet, response -> {
-            if (response.getCode() >= 300) {
-              log.error(new StatusLine(response).toString());
-            }
-            final HttpEntity responseEntity = response.getEntity();
-            if (responseEntity == null) {
-              return JsonNodeFactory.instance.objectNode();
-            }
-            try (InputStream inputStream = responseEntity.getContent()) {
-              return objectMapper.readTree(inputStream);
-            }
-          });
-          log.info("Response: {}", responseData);
-        } catch (IOException e) {
+      log.debug("Request: {}", cmd);
+      execute(cmd, ESP32S3Client::discard);
+      circuitBreaker.onSuccess();
+    } catch (IOException e) {
+      circuitBreaker.onFailure();
+      log.error("ESP32Client error: {}", e.getMessage());
+    }
+  }
+
+  /*
+   * The feedback is read only, a failed request is retried FEEDBACK_RETRIES times. The circuit
+   * breaker counts the whole call once, when the last attempt has failed.
+   * Returns null if no feedback was received.
+   */
+  public Feedback get_feedback() {
+    if (!circuitBreaker.allowRequest()) {
+      return null;
+    }
+    for (int attempt = 0; ; attempt++) {
+      try {
+        Feedback feedback = execute(FEEDBACK_CMD, response -> {
+          checkStatus(response);
+          final HttpEntity responseEntity = response.getEntity();
+          if (responseEntity == null) {
+            return null;
+          }
+          try (InputStream inputStream = responseEntity.getContent()) {
+            return Feedback.parse(inputStream);
+          } catch (JsonProcessingException e) {
+            log.error("invalid feedback: {}", e.getOriginalMessage());
+            return null;
+          }
+        });
+        circuitBreaker.onSuccess();
+        return feedback;
+      } catch (IOException e) {
+        if (attempt >= FEEDBACK_RETRIES) {
+          circuitBreaker.onFailure();
           log.error("ESP32Client error: {}", e.getMessage());
+          return null;
+        }
+        log.warn("ESP32Client error: {}, retrying", e.getMessage());
+        try {
+          Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return null;
         }
-        return responseData;
       }
-    } catch (RuntimeException e) {
-      log.error(e.getMessage());
     }
-    return responseData;
   }
 
-  public  JsonNode post(String ignoredPath, String cmd) throws RuntimeException {
-    return get(cmd);
+  public synchronized void close() {
+    circuitBreaker.close();
+    if (client != null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        log.error("close: {}", e.getMessage());
+      }
+      client = null;
+    }
+  }
+
+  private <T> T execute(String cmd, HttpClientResponseHandler<T> handler) throws IOException {
+    RcConfig current = config.current();
+    Timeout timeout = Timeout.ofMilliseconds(current.esp32TimeoutMs());
+    ClassicHttpRequest httpGet = ClassicRequestBuilder.get()
+        .setScheme("http")
+        .setHttpHost(new HttpHost(current.esp32Host()))
+        .setPath("/js")
+        .addParameter("json", cmd)
+        .build();
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(RequestConfig.custom().setResponseTimeout(timeout).build());
+    return getClient(current).execute(httpGet, context, handler);
   }
 
-  private Properties loadProperties() {
-    Properties properties = new Properties();
-    InputStream stream =
-        Thread.currentThread().getContextClassLoader()
-            .getResourceAsStream("application.properties");
+  // created on first use, the connections are kept alive between requests
+  private synchronized CloseableHttpClient getClient(RcConfig current) {
+    if (client == null) {
+      connManager = PoolingHttpClientConnectionManagerBuilder.create().build();
+      client = HttpClients.custom()
+          .setConnectionManager(connManager)
+          .disableAutomaticRetries()
+          .build();
+    }
+    // a changed timeout applies to new connections, open connections are kept
+    if (appliedTimeoutMs != current.esp32TimeoutMs()) {
+      appliedTimeoutMs = current.esp32TimeoutMs();
+      connManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+          .setConnectTimeout(Timeout.ofMilliseconds(appliedTimeoutMs))
+          .setSocketTimeout(Timeout.ofMilliseconds(appliedTimeoutMs))
+          .setTimeToLive(TimeValue.ofHours(1))
+          .build());
+    }
+    return client;
+  }
+
+  private boolean probe() {
     try {
-      properties.load(stream);
+      execute(FEEDBACK_CMD, ESP32S3Client::discard);
+      return true;
     } catch (IOException e) {
-      log.error(e.getMessage());
-      throw new RuntimeException(e);
+      log.debug("probe: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private static Void discard(ClassicHttpResponse response) throws IOException {
+    checkStatus(response);
+    EntityUtils.consume(response.getEntity());
+    return null;
+  }
+
+  private static void checkStatus(ClassicHttpResponse response) {
+    if (response.getCode() >= 300) {
+      log.error(new StatusLine(response).toString());
     }
-    return properties;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package org.example.cobraflex.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * CMD_FEEDBACK
+ *  - m1: speed of the left front wheel
+ *  - m2: speed of the right front wheel
+ *  - m3: speed of the right rear wheel
+ *  - m4: speed of the left rear wheel
+ *  - odl: mileage of the left wheel in cm after last start of the chassis
+ *  - odr: mileage of the right wheel in cm after the last start of the chassis
+ *  - v: voltage in mV
+ */
+public record Feedback(double m1, double m2, double m3, double m4, double odl, double odr,
+                       int v) {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /*
+   * Reads the feedback object token by token, no JsonNode tree is built.
+   * Unknown fields are skipped, returns null if the response carries no feedback.
+   */
+  public static Feedback parse(InputStream inputStream) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+      double m1 = 0;
+      double m2 = 0;
+      double m3 = 0;
+      double m4 = 0;
+      double odl = 0;
+      double odr = 0;
+      int v = 0;
+      boolean found = false;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        // an object or array is skipped as a whole, known fields only take numbers
+        JsonToken value = parser.nextToken();
+        if (value != null && value.isStructStart()) {
+          parser.skipChildren();
+          continue;
+        }
+        switch (field) {
+          case "M1" -> m1 = parser.getValueAsDouble();
+          case "M2" -> m2 = parser.getValueAsDouble();
+          case "M3" -> m3 = parser.getValueAsDouble();
+          case "M4" -> m4 = parser.getValueAsDouble();
+          case "odl" -> odl = parser.getValueAsDouble();
+          case "odr" -> odr = parser.getValueAsDouble();
+          case "v" -> v = parser.getValueAsInt();
+          default -> {
+            continue;
+          }
+        }
+        found = true;
+      }
+      return found ? new Feedback(m1, m2, m3, m4, odl, odr, v) : null;
+    }
+  }
+}
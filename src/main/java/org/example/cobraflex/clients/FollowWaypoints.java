@@ -0,0 +1,63 @@
+package org.example.cobraflex.clients;
+
+import java.util.List;
+
+/*
+ * Drives to a list of waypoints (x, y in cm, same frame as the odometry pose).
+ * Each waypoint is approached by turning towards it and driving straight; bearing and distance
+ * are computed from the pose reached at the previous waypoint.
+ */
+public class FollowWaypoints implements MotionPrimitive {
+
+  public record Waypoint(double x, double y) {
+  }
+
+  private final List<Waypoint> waypoints;
+  private final int maxSpeed;
+  private int next = 0;
+  private MotionPrimitive active;
+  private boolean turning;
+
+  public FollowWaypoints(List<Waypoint> waypoints, int maxSpeed) {
+    this.waypoints = List.copyOf(waypoints);
+    this.maxSpeed = maxSpeed;
+  }
+
+  @Override
+  public boolean step(MotionEngine engine) {
+    if (active != null) {
+      if (!active.step(engine)) {
+        return false;
+      }
+      // stand still for one tick between turning and driving
+      engine.set_wheel_speeds(0, 0);
+    }
+    if (active != null && turning) {
+      // turned towards the waypoint, now drive
+      Waypoint target = waypoints.get(next);
+      Pose pose = engine.pose();
+      active = new DriveDistance(Math.hypot(target.x() - pose.x(), target.y() - pose.y()),
+          maxSpeed);
+      turning = false;
+      active.start(engine);
+      next++;
+      return false;
+    }
+    if (next >= waypoints.size()) {
+      return true;
+    }
+    Waypoint target = waypoints.get(next);
+    Pose pose = engine.pose();
+    double bearing = Math.atan2(target.y() - pose.y(), target.x() - pose.x());
+    active = new TurnBy(Math.toDegrees(OdometryEstimator.normalize(bearing - pose.heading())),
+        maxSpeed);
+    turning = true;
+    active.start(engine);
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "FollowWaypoints" + waypoints;
+  }
+}
@@ -0,0 +1,51 @@
+package org.example.cobraflex.clients;
+
+/*
+ * Pans the gimbal from the current position to the right and left by <amplitude> steps of
+ * <stepSize> for the given number of cycles and returns to the start position.
+ */
+public class GimbalSweep implements MotionPrimitive {
+
+  private final int amplitude;
+  private final int stepSize;
+  private final int cycles;
+  private int position = 0;
+  private int direction = 1;
+  private int completed = 0;
+
+  public GimbalSweep(int amplitude, int stepSize, int cycles) {
+    this.amplitude = Math.abs(amplitude);
+    this.stepSize = Math.max(Math.abs(stepSize), 1);
+    this.cycles = cycles;
+  }
+
+  @Override
+  public boolean step(MotionEngine engine) {
+    if (completed >= cycles && position == 0) {
+      return true;
+    }
+    int target = completed >= cycles ? 0 : direction * amplitude;
+    int delta = Math.clamp(target - position, -stepSize, stepSize);
+    if (delta != 0) {
+      engine.gimbal_step(delta, 0);
+      position += delta;
+    }
+    if (position == target && completed < cycles) {
+      if (direction < 0) {
+        completed++;
+      }
+      direction = -direction;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean drivesChassis() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "GimbalSweep[" + amplitude + " x " + cycles + "]";
+  }
+}
@@ -1,21 +1,30 @@
 package org.example.cobraflex.clients;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Properties;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.apache.hc.core5.http.message.StatusLine;
@@ -25,71 +34,182 @@ import org.apache.hc.core5.util.Timeout;
 @Slf4j
 public class JetsonOrinNanoClient {
 
-  private final String host;
+  private static final int PORT = 8000;
+  private static final int FAILURE_THRESHOLD = 2;
+  private static final int GET_RETRIES = 2;
+  private static final long RETRY_DELAY_MS = 50;
 
-  public JetsonOrinNanoClient() {
-    Properties properties = loadProperties();
-    this.host = properties.get("Jetson.host").toString();
-    log.info("Jetson.host: {}", this.host);
+  private final ObjectMapper objectMapper = new ObjectMapper(new JsonFactory());
+  private final String healthPath;
+  @Getter
+  private final CircuitBreaker circuitBreaker;
+  // configured host name, target is null as long as it can't be resolved
+  private volatile String hostName;
+  private volatile HttpHost target;
+  private volatile CloseableHttpClient client;
+  private volatile RequestConfig requestConfig = RequestConfig.DEFAULT;
+  private volatile PoolingHttpClientConnectionManager connManager;
+
+  /*
+   * healthPath: idempotent GET used for the connection warm-up and the health probe
+   */
+  public JetsonOrinNanoClient(String healthPath) {
+    this.healthPath = healthPath;
+    this.circuitBreaker = new CircuitBreaker("Jetson", FAILURE_THRESHOLD, this::probe);
   }
 
-  public JsonNode get(String path) throws RuntimeException {
-    JsonFactory jsonFactory = new JsonFactory();
-    ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
-    JsonNode responseData = JsonNodeFactory.instance.objectNode();
-    PoolingHttpClientConnectionManager connManager = getConnManager();
-    if (connManager != null) {
-      try (CloseableHttpClient client = HttpClients.custom()
-          .setConnectionManager(connManager).build()) {
-        ClassicHttpRequest httpGet = ClassicRequestBuilder.get()
-            .setScheme("http")
-            .setHttpHost(new HttpHost(host, 8000))
-            .setPath(path)
-            .build();
-        log.info("Get: {}", path);
-        responseData = client.execute(httpGet, response -> {
-          if (response.getCode() >= 300) {
-            log.error(new StatusLine(response).toString());
+  /*
+   * Startup pipeline:
+   *  - resolving the configuration and building the pooled http client run in parallel
+   *  - the host name is resolved once, the pooled connections reuse the resolved address
+   *  - a first GET on the health path opens a keep-alive connection
+   * The returned future completes with true if the warm-up request succeeded, otherwise the
+   * circuit breaker is opened and probes the host until it answers. A host name that can't be
+   * resolved yet is resolved again by the probe and by apply().
+   * Requests issued before the pipeline has finished are dropped.
+   */
+  public CompletableFuture<Boolean> connect(CompletableFuture<RcConfig> config) {
+    long start = System.nanoTime();
+    CompletableFuture<HttpHost> resolved = config
+        .thenApplyAsync(c -> {
+          hostName = c.jetsonHost();
+          log.info("Jetson.host: {} (config loaded after {} ms)", c.jetsonHost(),
+              millisSince(start));
+          try {
+            HttpHost host = resolve(c.jetsonHost());
+            log.info("Jetson.host resolved to {} after {} ms", host.getAddress().getHostAddress(),
+                millisSince(start));
+            return host;
+          } catch (UnknownHostException e) {
+            log.warn("Jetson.host {} not resolved: {}", c.jetsonHost(), e.getMessage());
+            return null;
           }
-          final HttpEntity responseEntity = response.getEntity();
-          if (responseEntity == null) {
-            return JsonNodeFactory.instance.objectNode();
+        });
+    CompletableFuture<CloseableHttpClient> httpClient = CompletableFuture
+        .supplyAsync(() -> {
+          connManager = getConnManager();
+          // retries are done by get(), posts are never retried
+          CloseableHttpClient built = HttpClients.custom()
+              .setConnectionManager(connManager)
+              .disableAutomaticRetries()
+              .build();
+          // assigned even if the configuration fails, close() releases it
+          this.client = built;
+          log.info("http client built after {} ms", millisSince(start));
+          return built;
+        });
+    return resolved.thenCombine(httpClient, (host, _) -> {
+          applyTimeouts(config.join());
+          this.target = host;
+          return host != null;
+        })
+        .thenApplyAsync(hostResolved -> {
+          if (!hostResolved) {
+            circuitBreaker.trip();
+            return false;
           }
-          try (InputStream inputStream = responseEntity.getContent()) {
-            return objectMapper.readTree(inputStream);
+          try {
+            client.execute(ClassicRequestBuilder.get().setHttpHost(target).setPath(healthPath)
+                .build(), context(), this::discard);
+            log.info("connection warmed up after {} ms", millisSince(start));
+            return true;
+          } catch (IOException e) {
+            log.warn("warm-up failed after {} ms: {}", millisSince(start), e.getMessage());
+            circuitBreaker.trip();
+            return false;
           }
+        })
+        .exceptionally(e -> {
+          log.error("connect: {}", e.getMessage());
+          circuitBreaker.trip();
+          return false;
         });
-        if (responseData != null) {
-          if (!responseData.isEmpty()) {
-            log.info("Get response: {}", responseData);
-          }
+  }
+
+  /*
+   * Applies configuration changes without closing the pooled connections:
+   *  - a changed host is resolved in the background and used once it is resolved, requests are
+   *    dropped meanwhile, connections to the old host expire
+   *  - a host that can't be resolved opens the circuit breaker, the probe resolves it again
+   *  - before connect() has read the configuration, the host is left to connect()
+   *  - timeouts apply to new connections and, as response timeout, to the next request
+   */
+  public void apply(RcConfig config) {
+    applyTimeouts(config);
+    String name = config.jetsonHost();
+    String previous = hostName;
+    if (previous == null || previous.equals(name)) {
+      return;
+    }
+    hostName = name;
+    target = null;
+    log.info("Jetson.host changed to {}", name);
+    CompletableFuture.runAsync(() -> {
+      try {
+        HttpHost host = resolve(name);
+        // unless the host was changed again meanwhile
+        if (name.equals(hostName)) {
+          target = host;
+        }
+      } catch (UnknownHostException e) {
+        log.error("Jetson.host {} not resolved: {}", name, e.getMessage());
+        if (name.equals(hostName)) {
+          circuitBreaker.trip();
         }
+      }
+    });
+  }
+
+  /*
+   * Reads the feedback with a streaming parser directly into a Feedback record.
+   * Returns null if no feedback was received.
+   */
+  public Feedback get_feedback(String path) {
+    Feedback feedback = get(path, response -> {
+      checkStatus(response);
+      final HttpEntity responseEntity = response.getEntity();
+      if (responseEntity == null) {
+        return null;
+      }
+      try (InputStream inputStream = responseEntity.getContent()) {
+        return Feedback.parse(inputStream);
+      } catch (JsonProcessingException e) {
+        // the host answered, a malformed body is no link failure
+        log.error("Get: {} invalid feedback: {}", path, e.getOriginalMessage());
+        return null;
+      }
+    });
+    if (feedback != null && log.isDebugEnabled()) {
+      log.debug("Get response: {}", feedback);
+    }
+    return feedback;
+  }
+
+  /*
+   * Fire and forget command: the response body is not parsed, only drained so the
+   * connection can be reused.
+   */
+  public void send(String path, String cmd) {
+    if (isReady("Post", path)) {
+      log.debug("Post: {} {}", path, cmd);
+      try {
+        client.execute(buildPost(path, cmd), context(), this::discard);
+        circuitBreaker.onSuccess();
       } catch (IOException e) {
-        log.error("Get: {}", e.getMessage());
+        circuitBreaker.onFailure();
+        log.error("Post: {}", e.getMessage());
       }
     }
-    return responseData;
   }
 
+  // command whose response is needed
   public JsonNode post(String path, String cmd) throws RuntimeException {
-    JsonFactory jsonFactory = new JsonFactory();
-    ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
     JsonNode responseData = JsonNodeFactory.instance.objectNode();
-    PoolingHttpClientConnectionManager connManager = getConnManager();
-    if (connManager != null) {
-      try (CloseableHttpClient client = HttpClients.custom()
-          .setConnectionManager(connManager).build()) {
-        ClassicHttpRequest httpPost = ClassicRequestBuilder.post()
-            .setScheme("http")
-            .setHttpHost(new HttpHost(host, 8000))
-            .setPath(path)
-            .setEntity(new StringEntity(cmd))
-            .build();
-        log.info("Post: {} {}", path, cmd);
-        responseData = client.execute(httpPost, response -> {
-          if (response.getCode() >= 300) {
-            log.error(new StatusLine(response).toString());
-          }
+    if (isReady("Post", path)) {
+      log.info("Post: {} {}", path, cmd);
+      try {
+        responseData = client.execute(buildPost(path, cmd), context(), response -> {
+          checkStatus(response);
           final HttpEntity responseEntity = response.getEntity();
           if (responseEntity == null) {
             return JsonNodeFactory.instance.objectNode();
@@ -98,27 +218,151 @@ public class JetsonOrinNanoClient {
             return objectMapper.readTree(inputStream);
           }
         });
+        circuitBreaker.onSuccess();
         if (responseData != null) {
           if (!responseData.isEmpty()) {
             log.info("Post response: {}", responseData);
           }
         }
       } catch (IOException e) {
+        circuitBreaker.onFailure();
         log.error("Post: {}", e.getMessage());
       }
     }
     return responseData;
   }
 
+  public void close() {
+    circuitBreaker.close();
+    CloseableHttpClient closing = client;
+    if (closing != null) {
+      try {
+        closing.close();
+      } catch (IOException e) {
+        log.error("close: {}", e.getMessage());
+      }
+    }
+  }
+
+  /*
+   * GET requests are idempotent, a failed request is retried GET_RETRIES times. The circuit
+   * breaker counts the whole call once, when the last attempt has failed.
+   * Returns null if the request failed.
+   */
+  private <T> T get(String path, HttpClientResponseHandler<T> handler) {
+    if (!isReady("Get", path)) {
+      return null;
+    }
+    ClassicHttpRequest httpGet = ClassicRequestBuilder.get()
+        .setHttpHost(target)
+        .setPath(path)
+        .build();
+    log.debug("Get: {}", path);
+    for (int attempt = 0; ; attempt++) {
+      try {
+        T result = client.execute(httpGet, context(), handler);
+        circuitBreaker.onSuccess();
+        return result;
+      } catch (IOException e) {
+        if (attempt >= GET_RETRIES) {
+          circuitBreaker.onFailure();
+          log.error("Get: {}", e.getMessage());
+          return null;
+        }
+        log.warn("Get: {}, retrying", e.getMessage());
+        try {
+          Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+    }
+  }
+
+  private HttpHost resolve(String host) throws UnknownHostException {
+    return new HttpHost("http", InetAddress.getByName(host), host, PORT);
+  }
+
+  private void applyTimeouts(RcConfig config) {
+    Timeout timeout = Timeout.ofMilliseconds(config.jetsonTimeoutMs());
+    if (connManager != null) {
+      connManager.setDefaultConnectionConfig(connectionConfig(timeout));
+    }
+    requestConfig = RequestConfig.custom().setResponseTimeout(timeout).build();
+  }
+
+  private HttpClientContext context() {
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(requestConfig);
+    return context;
+  }
+
+  private ClassicHttpRequest buildPost(String path, String cmd) {
+    return ClassicRequestBuilder.post()
+        .setHttpHost(target)
+        .setPath(path)
+        .setEntity(new StringEntity(cmd))
+        .build();
+  }
+
+  private Void discard(ClassicHttpResponse response) throws IOException {
+    checkStatus(response);
+    EntityUtils.consume(response.getEntity());
+    return null;
+  }
+
+  private static void checkStatus(ClassicHttpResponse response) {
+    if (response.getCode() >= 300) {
+      log.error(new StatusLine(response).toString());
+    }
+  }
+
+  private boolean isReady(String method, String path) {
+    if (target == null || client == null) {
+      log.debug("{}: {} dropped, not connected yet", method, path);
+      return false;
+    }
+    if (!circuitBreaker.allowRequest()) {
+      log.debug("{}: {} dropped, link down", method, path);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean probe() {
+    String name = hostName;
+    if (client == null || name == null) {
+      return false;
+    }
+    if (target == null) {
+      try {
+        HttpHost host = resolve(name);
+        if (!name.equals(hostName)) {
+          return false;
+        }
+        target = host;
+        log.info("Jetson.host {} resolved to {}", name, host.getAddress().getHostAddress());
+      } catch (UnknownHostException e) {
+        log.debug("probe: {} not resolved", name);
+        return false;
+      }
+    }
+    try {
+      client.execute(ClassicRequestBuilder.get().setHttpHost(target).setPath(healthPath).build(),
+          context(), this::discard);
+      return true;
+    } catch (IOException e) {
+      log.debug("probe: {}", e.getMessage());
+      return false;
+    }
+  }
+
   PoolingHttpClientConnectionManager getConnManager() {
     PoolingHttpClientConnectionManager connManager;
     try {
       connManager = PoolingHttpClientConnectionManagerBuilder.create().build();
-      connManager.setDefaultConnectionConfig(ConnectionConfig.custom()
-          .setConnectTimeout(Timeout.ofSeconds(1))
-          .setSocketTimeout(Timeout.ofSeconds(1))
-          .setTimeToLive(TimeValue.ofHours(1))
-          .build());
+      connManager.setDefaultConnectionConfig(connectionConfig(Timeout.ofSeconds(1)));
     } catch (RuntimeException e) {
       log.error("PoolingHttpClientConnectionManager: {}", e.getMessage());
       connManager = null;
@@ -126,17 +370,15 @@ public class JetsonOrinNanoClient {
     return connManager;
   }
 
-  private Properties loadProperties() {
-    Properties properties = new Properties();
-    InputStream stream =
-        Thread.currentThread().getContextClassLoader()
-            .getResourceAsStream("application.properties");
-    try {
-      properties.load(stream);
-    } catch (IOException e) {
-      log.error(e.getMessage());
-      throw new RuntimeException(e);
-    }
-    return properties;
+  private static ConnectionConfig connectionConfig(Timeout timeout) {
+    return ConnectionConfig.custom()
+        .setConnectTimeout(timeout)
+        .setSocketTimeout(timeout)
+        .setTimeToLive(TimeValue.ofHours(1))
+        .build();
+  }
+
+  private static long millisSince(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
   }
 }
@@ -0,0 +1,194 @@
+package org.example.cobraflex.clients;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Runs one MotionPrimitive at a time on the control loop tick:
+ *  - run() cancels the active primitive and starts the new one
+ *  - the chassis engine runs the primitives that drive the chassis, the gimbal engine the ones
+ *    that only move the gimbal, so a gimbal sweep neither takes over nor stops chassis motion
+ *  - the returned future completes when the primitive has finished, cancel() stops the chassis,
+ *    handOver() leaves the chassis to the manual controls without a stop
+ *  - wheel speeds are quantized and only sent when they change, an unchanged non-zero setpoint is
+ *    repeated every chassis.repeat.ms like the manual controls do
+ *  - while a chassis primitive runs, the telemetry stream is paused and polled on every tick
+ */
+@Slf4j
+public class MotionEngine {
+
+  public static final long TICK_MS = 50;
+  private static final int SPEED_QUANTUM = 50;
+  // the last sent setpoint is unknown after the manual controls took over
+  private static final int UNKNOWN = Integer.MIN_VALUE;
+
+  private final CobraFlexClient cobraflex;
+  private final boolean chassis;
+  private final ScheduledExecutorService loop;
+  private CompletableFuture<Void> current;
+  private ScheduledFuture<?> ticker;
+  // setpoint state, guarded by the engine lock
+  private int left = 0;
+  private int right = 0;
+  private int sentLeft = 0;
+  private int sentRight = 0;
+  private long lastSent = 0;
+
+  public MotionEngine(CobraFlexClient cobraflex, String name, boolean chassis) {
+    this.cobraflex = cobraflex;
+    this.chassis = chassis;
+    this.loop = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public synchronized CompletableFuture<Void> run(MotionPrimitive primitive) {
+    if (primitive.drivesChassis() != chassis) {
+      throw new IllegalArgumentException(primitive + " doesn't run on the "
+          + (chassis ? "chassis" : "gimbal") + " engine");
+    }
+    if (current != null) {
+      // the new primitive takes over without a stop in between, it sets its own setpoint
+      current.cancel(false);
+      ticker.cancel(false);
+      left = 0;
+      right = 0;
+    } else if (chassis) {
+      cobraflex.getTelemetry().pause();
+    }
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    AtomicBoolean started = new AtomicBoolean(false);
+    current = result;
+    ticker = loop.scheduleAtFixedRate(() -> tick(primitive, result, started),
+        0, TICK_MS, TimeUnit.MILLISECONDS);
+    log.info("{} started at {}", primitive, pose());
+    return result;
+  }
+
+  // stops the active primitive and the chassis before it returns
+  public synchronized void cancel() {
+    if (current != null) {
+      CompletableFuture<Void> result = current;
+      finish();
+      result.cancel(false);
+    }
+  }
+
+  /*
+   * Stops the active primitive without stopping the chassis, called before a manual command
+   * takes over the setpoint. No command of the primitive is sent after it returns.
+   */
+  public synchronized void handOver() {
+    if (current != null) {
+      CompletableFuture<Void> result = current;
+      release();
+      left = 0;
+      right = 0;
+      sentLeft = UNKNOWN;
+      sentRight = UNKNOWN;
+      result.cancel(false);
+    }
+  }
+
+  public void shutdown() {
+    cancel();
+    loop.shutdown();
+  }
+
+  public Pose pose() {
+    return cobraflex.getOdometry().pose();
+  }
+
+  // wheel speeds in rpm, positive values drive forward
+  public void set_wheel_speeds(int left, int right) {
+    if (!chassis) {
+      throw new IllegalStateException("wheel speeds set on the gimbal engine");
+    }
+    this.left = quantize(left);
+    this.right = quantize(right);
+  }
+
+  public void gimbal_step(int delta_pan, int delta_tilt) {
+    cobraflex.gimbal_step(delta_pan, delta_tilt);
+  }
+
+  // control loop thread
+  private void tick(MotionPrimitive primitive, CompletableFuture<Void> result,
+      AtomicBoolean started) {
+    // polled outside the lock, cancel() and handOver() don't wait for the response
+    if (chassis && !result.isDone()) {
+      cobraflex.getTelemetry().poll();
+    }
+    synchronized (this) {
+      // replaced, cancelled or handed over meanwhile
+      if (current != result) {
+        return;
+      }
+      // the future was cancelled by the caller
+      if (result.isDone()) {
+        finish();
+        return;
+      }
+      try {
+        if (started.compareAndSet(false, true)) {
+          primitive.start(this);
+        }
+        if (primitive.step(this)) {
+          finish();
+          result.complete(null);
+          log.info("{} finished at {}", primitive, pose());
+          return;
+        }
+        flush();
+      } catch (RuntimeException e) {
+        log.error("{} failed: {}", primitive, e.getMessage());
+        finish();
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  // lock held, stops the chassis
+  private void finish() {
+    release();
+    left = 0;
+    right = 0;
+    flush();
+  }
+
+  // lock held
+  private void release() {
+    ticker.cancel(false);
+    current = null;
+    if (chassis) {
+      cobraflex.getTelemetry().resume();
+    }
+  }
+
+  private void flush() {
+    if (!chassis) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    boolean changed = left != sentLeft || right != sentRight;
+    boolean keepalive = (left != 0 || right != 0)
+        && now - lastSent >= cobraflex.getConfig().current().chassisRepeatMs();
+    if (changed || keepalive) {
+      cobraflex.cmd_wheel_speeds(left, right);
+      sentLeft = left;
+      sentRight = right;
+      lastSent = now;
+    }
+  }
+
+  private static int quantize(int speed) {
+    return Math.round((float) speed / SPEED_QUANTUM) * SPEED_QUANTUM;
+  }
+}
@@ -0,0 +1,20 @@
+package org.example.cobraflex.clients;
+
+/*
+ * Closed loop maneuver executed by the MotionEngine.
+ * start() is called on the first tick, step() on every tick until it returns true.
+ * Setpoints are passed to the engine, which only sends commands when they change.
+ */
+public interface MotionPrimitive {
+
+  default void start(MotionEngine engine) {
+  }
+
+  // returns true when the maneuver is finished
+  boolean step(MotionEngine engine);
+
+  // false for primitives that only move the gimbal, they run on the gimbal engine
+  default boolean drivesChassis() {
+    return true;
+  }
+}
@@ -0,0 +1,110 @@
+package org.example.cobraflex.clients;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Dead reckoning based on the wheel mileage of the feedback (odl, odr).
+ *  - update() integrates the mileage deltas since the last sample, constant time, no allocation
+ *  - odl/odr restart at 0 when the chassis restarts: a step towards 0 that is larger than the
+ *    wheels could have driven at the reported speeds (M1-M4) since the last sample is taken as
+ *    a restart, the mileage since the restart is integrated and the pose is kept
+ *  - steps that fit the wheel speeds are integrated however large, e.g. after a link outage
+ */
+@Slf4j
+public class OdometryEstimator {
+
+  // distance between the left and the right wheels in cm
+  public static final double TRACK_WIDTH_CM = 22.0;
+  private static final double WHEEL_CIRCUMFERENCE_CM = Math.PI * 8.0;
+  // the reported speeds are samples, the wheels may have been faster in between
+  private static final double SPEED_SLACK = 2.0;
+  // odl/odr are reported in whole cm
+  private static final double RESOLUTION_CM = 2.0;
+
+  private final double trackWidth;
+  private boolean initialized = false;
+  private long lastNanos;
+  private double lastOdl;
+  private double lastOdr;
+  private double lastSpeedLeft;
+  private double lastSpeedRight;
+  private double x = 0;
+  private double y = 0;
+  private double heading = 0;
+
+  public OdometryEstimator() {
+    this(TRACK_WIDTH_CM);
+  }
+
+  public OdometryEstimator(double trackWidth) {
+    this.trackWidth = trackWidth;
+  }
+
+  public void update(Feedback feedback) {
+    update(feedback, System.nanoTime());
+  }
+
+  public synchronized void update(Feedback feedback, long nanos) {
+    double odl = feedback.odl();
+    double odr = feedback.odr();
+    // rpm of the left (M1, M4) and the right side (M2, M3)
+    double speedLeft = (Math.abs(feedback.m1()) + Math.abs(feedback.m4())) / 2;
+    double speedRight = (Math.abs(feedback.m2()) + Math.abs(feedback.m3())) / 2;
+    if (!initialized) {
+      initialized = true;
+    } else {
+      double seconds = (nanos - lastNanos) / 1e9;
+      double deltaLeft = odl - lastOdl;
+      double deltaRight = odr - lastOdr;
+      boolean fits = Math.abs(deltaLeft) <= reachable(Math.max(speedLeft, lastSpeedLeft), seconds)
+          && Math.abs(deltaRight) <= reachable(Math.max(speedRight, lastSpeedRight), seconds);
+      if (!fits && Math.abs(odl) < Math.abs(lastOdl) && Math.abs(odr) < Math.abs(lastOdr)) {
+        log.warn("odometry counters reset (odl={}, odr={}), pose kept", odl, odr);
+        deltaLeft = odl;
+        deltaRight = odr;
+      }
+      integrate(deltaLeft, deltaRight);
+    }
+    lastNanos = nanos;
+    lastOdl = odl;
+    lastOdr = odr;
+    lastSpeedLeft = speedLeft;
+    lastSpeedRight = speedRight;
+  }
+
+  private void integrate(double deltaLeft, double deltaRight) {
+    double distance = (deltaLeft + deltaRight) / 2;
+    double deltaHeading = (deltaRight - deltaLeft) / trackWidth;
+    // integrate along the mean heading of the step
+    double midHeading = heading + deltaHeading / 2;
+    x += distance * Math.cos(midHeading);
+    y += distance * Math.sin(midHeading);
+    heading = normalize(heading + deltaHeading);
+  }
+
+  // largest mileage step in cm the wheels can drive at <rpm> within <seconds>
+  private static double reachable(double rpm, double seconds) {
+    return rpm / 60 * WHEEL_CIRCUMFERENCE_CM * seconds * SPEED_SLACK + RESOLUTION_CM;
+  }
+
+  // sets the current position as origin, keeps the counter baseline
+  public synchronized void reset() {
+    x = 0;
+    y = 0;
+    heading = 0;
+  }
+
+  public synchronized Pose pose() {
+    return new Pose(x, y, heading);
+  }
+
+  static double normalize(double angle) {
+    while (angle > Math.PI) {
+      angle -= 2 * Math.PI;
+    }
+    while (angle < -Math.PI) {
+      angle += 2 * Math.PI;
+    }
+    return angle;
+  }
+}
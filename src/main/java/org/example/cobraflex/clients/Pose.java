@@ -0,0 +1,14 @@
+package org.example.cobraflex.clients;
+
+/*
+ * Pose of the chassis relative to the position at startup or the last reset:
+ *  - x: cm in the initial driving direction
+ *  - y: cm to the left of the initial driving direction
+ *  - heading: radians, counterclockwise, range -PI .. PI
+ */
+public record Pose(double x, double y, double heading) {
+
+  public double headingDegrees() {
+    return Math.toDegrees(heading);
+  }
+}
@@ -0,0 +1,58 @@
+package org.example.cobraflex.clients;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/*
+ * Typed runtime configuration, see application.properties for the keys and defaults.
+ */
+public record RcConfig(
+    String jetsonHost,
+    String esp32Host,
+    Transport transport,
+    int jetsonTimeoutMs,
+    int esp32TimeoutMs,
+    long telemetryPeriodMs,
+    long gimbalRepeatMs,
+    long chassisRepeatMs,
+    long rampIntervalMs,
+    int rampStep,
+    int defaultSpeed) {
+
+  // throws IllegalArgumentException for missing or invalid values
+  public static RcConfig of(Properties properties) {
+    return new RcConfig(
+        value(properties, "Jetson.host"),
+        value(properties, "ESP32.host"),
+        Transport.valueOf(value(properties, "transport").toUpperCase(Locale.ROOT)),
+        positive(properties, "Jetson.timeout.ms"),
+        positive(properties, "ESP32.timeout.ms"),
+        positive(properties, "telemetry.period.ms"),
+        positive(properties, "gimbal.repeat.ms"),
+        positive(properties, "chassis.repeat.ms"),
+        positive(properties, "chassis.ramp.interval.ms"),
+        positive(properties, "chassis.ramp.step"),
+        positive(properties, "chassis.speed.default"));
+  }
+
+  private static String value(Properties properties, String key) {
+    String value = properties.getProperty(key);
+    if (value == null || value.isBlank()) {
+      throw new IllegalArgumentException("missing " + key);
+    }
+    return value.trim();
+  }
+
+  private static int positive(Properties properties, String key) {
+    int value;
+    try {
+      value = Integer.parseInt(value(properties, key));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key + " is no number: " + properties.getProperty(key));
+    }
+    if (value <= 0) {
+      throw new IllegalArgumentException(key + " must be positive: " + value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,94 @@
+package org.example.cobraflex.clients;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Polls the chassis feedback periodically and passes every sample to the listeners.
+ * Listeners are called on the polling thread.
+ * While a motion primitive runs, the stream is paused and the control loop calls poll() on its
+ * tick; a period set meanwhile applies when the stream resumes.
+ */
+@Slf4j
+public class TelemetryStream {
+
+  private final CobraFlexClient cobraflex;
+  private final List<Consumer<Feedback>> listeners = new CopyOnWriteArrayList<>();
+  private Timer timer;
+  private boolean running = false;
+  private boolean paused = false;
+  private long periodMillis;
+
+  public TelemetryStream(CobraFlexClient cobraflex) {
+    this.cobraflex = cobraflex;
+  }
+
+  public void addListener(Consumer<Feedback> listener) {
+    listeners.add(listener);
+  }
+
+  public synchronized void start(long periodMillis) {
+    this.periodMillis = periodMillis;
+    running = true;
+    if (!paused) {
+      schedule();
+    }
+    log.info("telemetry started, period {} ms", periodMillis);
+  }
+
+  public synchronized boolean isRunning() {
+    return running;
+  }
+
+  public synchronized void stop() {
+    running = false;
+    cancelTimer();
+  }
+
+  // the caller polls instead, see poll()
+  public synchronized void pause() {
+    paused = true;
+    cancelTimer();
+  }
+
+  public synchronized void resume() {
+    paused = false;
+    if (running) {
+      schedule();
+    }
+  }
+
+  // requests one sample and passes it to the listeners on the calling thread, null if it failed
+  public Feedback poll() {
+    Feedback feedback = cobraflex.get_feedback();
+    if (feedback != null) {
+      for (Consumer<Feedback> listener : listeners) {
+        listener.accept(feedback);
+      }
+    }
+    return feedback;
+  }
+
+  private void schedule() {
+    cancelTimer();
+    timer = new Timer("telemetry", true);
+    // fixed delay: a slow response must not cause a burst of requests afterwards
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, 0, periodMillis);
+  }
+
+  private void cancelTimer() {
+    if (timer != null) {
+      timer.cancel();
+      timer = null;
+    }
+  }
+}
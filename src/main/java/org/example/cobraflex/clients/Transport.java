@@ -0,0 +1,7 @@
+package org.example.cobraflex.clients;
+
+// route of the chassis commands and the feedback, the gimbal is always controlled via the Jetson
+public enum Transport {
+  JETSON,
+  ESP32
+}
@@ -0,0 +1,49 @@
+package org.example.cobraflex.clients;
+
+/*
+ * Turns on the spot by an angle in degrees, positive angles turn counterclockwise (left).
+ *  - the heading changes of every tick are summed up, so angles beyond 180 degrees are turned
+ *  - the speed is reduced proportionally to the remaining angle
+ */
+public class TurnBy implements MotionPrimitive {
+
+  private static final double TOLERANCE_RAD = Math.toRadians(2);
+  private static final double SPEED_PER_RAD = 600.0;
+  private static final int MIN_SPEED = 150;
+
+  private final double angle;
+  private final int maxSpeed;
+  private double lastHeading;
+  private double turned;
+
+  public TurnBy(double degrees, int maxSpeed) {
+    this.angle = Math.toRadians(degrees);
+    this.maxSpeed = Math.max(maxSpeed, MIN_SPEED);
+  }
+
+  @Override
+  public void start(MotionEngine engine) {
+    lastHeading = engine.pose().heading();
+    turned = 0;
+  }
+
+  @Override
+  public boolean step(MotionEngine engine) {
+    double heading = engine.pose().heading();
+    turned += OdometryEstimator.normalize(heading - lastHeading);
+    lastHeading = heading;
+    double error = angle - turned;
+    if (Math.abs(error) <= TOLERANCE_RAD) {
+      return true;
+    }
+    int speed = (int) (Math.signum(error)
+        * Math.clamp(Math.abs(error) * SPEED_PER_RAD, MIN_SPEED, maxSpeed));
+    engine.set_wheel_speeds(-speed, speed);
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "TurnBy[" + Math.toDegrees(angle) + " deg]";
+  }
+}
@@ -0,0 +1,65 @@
+package org.example.cobraflex.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * CPU time and allocation per feedback sample, run with ./mvnw -Pjmh test-compile exec:exec
+ *  - streaming: Feedback.parse(), the current handling
+ *  - tree: JsonNode tree, fields read from the tree
+ *  - treeLogged: tree plus toString(), as the former Get response info log did for every sample
+ * The allocation per sample is reported by the gc profiler as gc.alloc.rate.norm (bytes/op).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedbackBenchmark {
+
+  // CMD_FEEDBACK response, including fields the client doesn't use
+  private static final byte[] RESPONSE = ("{\"T\":1001,\"M1\":612.5,\"M2\":598.0,\"M3\":601.5,"
+      + "\"M4\":609.0,\"odl\":1333.0,\"odr\":1329.5,\"v\":11874,\"temp\":41.5,"
+      + "\"imu\":{\"r\":0.12,\"p\":-0.4,\"y\":87.3}}").getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper objectMapper = new ObjectMapper(new JsonFactory());
+
+  @Benchmark
+  public Feedback streaming() throws IOException {
+    return Feedback.parse(new ByteArrayInputStream(RESPONSE));
+  }
+
+  @Benchmark
+  public Feedback tree() throws IOException {
+    return fromTree(objectMapper.readTree(new ByteArrayInputStream(RESPONSE)));
+  }
+
+  @Benchmark
+  public void treeLogged(Blackhole blackhole) throws IOException {
+    JsonNode node = objectMapper.readTree(new ByteArrayInputStream(RESPONSE));
+    blackhole.consume(node.toString());
+    blackhole.consume(fromTree(node));
+  }
+
+  private static Feedback fromTree(JsonNode node) {
+    return new Feedback(node.path("M1").asDouble(), node.path("M2").asDouble(),
+        node.path("M3").asDouble(), node.path("M4").asDouble(), node.path("odl").asDouble(),
+        node.path("odr").asDouble(), node.path("v").asInt());
+  }
+}
@@ -0,0 +1,85 @@
+package org.example.cobraflex.clients;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class OdometryEstimatorTest {
+
+  private static final double DELTA = 1e-9;
+  private static final long SECOND = 1_000_000_000L;
+
+  private final OdometryEstimator odometry = new OdometryEstimator(20.0);
+
+  private static Feedback sample(double rpm, double odl, double odr) {
+    return new Feedback(rpm, rpm, rpm, rpm, odl, odr, 12000);
+  }
+
+  @Test
+  void integratesStraightDrive() {
+    odometry.update(sample(0, 0, 0), 0);
+    odometry.update(sample(100, 10, 10), SECOND);
+    odometry.update(sample(100, 25, 25), 2 * SECOND);
+
+    assertEquals(new Pose(25, 0, 0), odometry.pose());
+  }
+
+  @Test
+  void integratesTurnOnTheSpot() {
+    odometry.update(sample(0, 0, 0), 0);
+    // pi / 2 at a track width of 20 cm: each side drives a quarter of a circle of radius 10
+    double arc = Math.PI / 2 * 10;
+    odometry.update(sample(100, -arc, arc), SECOND);
+
+    Pose pose = odometry.pose();
+    assertEquals(0, pose.x(), DELTA);
+    assertEquals(0, pose.y(), DELTA);
+    assertEquals(Math.PI / 2, pose.heading(), DELTA);
+  }
+
+  @Test
+  void integratesBackwardDriveThroughZero() {
+    odometry.update(sample(0, 0, 0), 0);
+    odometry.update(sample(100, 10, 10), SECOND);
+    odometry.update(sample(100, -4, -4), 2 * SECOND);
+
+    assertEquals(-4, odometry.pose().x(), DELTA);
+  }
+
+  @Test
+  void keepsPoseWhenCountersResetWhileStanding() {
+    odometry.update(sample(0, 0, 0), 0);
+    odometry.update(sample(0, 50, 50), SECOND);
+    odometry.update(sample(0, 0, 0), 2 * SECOND);
+
+    assertEquals(new Pose(50, 0, 0), odometry.pose());
+  }
+
+  @Test
+  void integratesMileageSinceCounterResetWhileMoving() {
+    odometry.update(sample(100, 0, 0), 0);
+    odometry.update(sample(100, 20, 20), SECOND);
+    // 17 cm back within 100 ms is not reachable at 100 rpm, the chassis restarted
+    odometry.update(sample(100, 3, 3), SECOND + SECOND / 10);
+
+    assertEquals(23, odometry.pose().x(), DELTA);
+  }
+
+  @Test
+  void integratesLargeStepAfterOutage() {
+    odometry.update(sample(100, 0, 0), 0);
+    odometry.update(sample(100, 404, 404), 10 * SECOND);
+
+    assertEquals(404, odometry.pose().x(), DELTA);
+  }
+
+  @Test
+  void resetKeepsCounterBaseline() {
+    odometry.update(sample(0, 0, 0), 0);
+    odometry.update(sample(100, 30, 30), SECOND);
+    odometry.reset();
+    odometry.update(sample(100, 40, 40), 2 * SECOND);
+
+    assertEquals(new Pose(10, 0, 0), odometry.pose());
+  }
+}